@@ -0,0 +1,121 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rmannibucau.jira.reporter.service.DependencyCrawler;
+import com.github.rmannibucau.jira.reporter.service.HttpTransport;
+import com.github.rmannibucau.jira.reporter.service.IconCache;
+import com.github.rmannibucau.jira.reporter.service.Jira;
+import com.github.rmannibucau.jira.reporter.service.ReportGenerator;
+import com.github.rmannibucau.jira.reporter.service.RequestScheduler;
+import com.github.rmannibucau.jira.reporter.service.Stats;
+import com.github.rmannibucau.jira.reporter.stub.StubJira;
+import com.github.rmannibucau.jira.reporter.stub.SyntheticIssues;
+
+/**
+ * End to end crawl (query, pagination, dependencies, avatars and graph) against {@link StubJira}
+ * with a simulated server latency and throttling. Each invocation is a cold crawl.
+ */
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class CrawlBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int issues;
+
+    @Param("2")
+    private int fanOut;
+
+    @Param("0.1")
+    private double cycleRatio;
+
+    // ms per request
+    @Param("20")
+    private long latency;
+
+    @Param("0")
+    private double throttleRatio;
+
+    @Param("16")
+    private int maxConcurrency;
+
+    @Param({"cxf", "jdk"})
+    private String transport;
+
+    private StubJira stub;
+
+    private String base;
+
+    private Stats stats;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        final int port = StubJira.freePort();
+        stub = new StubJira(SyntheticIssues.generate(issues, fanOut, cycleRatio, "http://localhost:" + port, 1234),
+                Math.max(1, issues / 100));
+        base = stub.start(port);
+        stub.setLatency(latency);
+        stub.setThrottleRatio(throttleRatio);
+        stub.setRetryAfter(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        stub.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void resetStats() {
+        stats = new Stats();
+    }
+
+    @TearDown(Level.Invocation)
+    public void printStats() {
+        stats.print(System.out);
+    }
+
+    @Benchmark
+    public int crawl() {
+        try (final Jira jira = new Jira(base, null, null,
+                HttpTransport.create(transport, 60000, 60000, maxConcurrency), 100, 4, Jira.DEFAULT_FIELDS, Jira.DEFAULT_URL_BUDGET,
+                new RequestScheduler(maxConcurrency, 5, 10, stats));
+             final IconCache iconCache = new IconCache(null)) {
+            final ReportGenerator generator = new ReportGenerator(
+                    jira, new DependencyCrawler(jira, -1, -1, 100), null, iconCache, null, false, 0);
+            return generator.build(generator.fetch("project = CORE", new String[]{"Closed"})).getGraph().nodeCount();
+        }
+    }
+}
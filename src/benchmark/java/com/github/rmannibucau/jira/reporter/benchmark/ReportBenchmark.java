@@ -0,0 +1,163 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.benchmark;
+
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rmannibucau.jira.reporter.service.Cytoscape;
+import com.github.rmannibucau.jira.reporter.service.IconCache;
+import com.github.rmannibucau.jira.reporter.service.Jira;
+import com.github.rmannibucau.jira.reporter.service.ReportGenerator;
+import com.github.rmannibucau.jira.reporter.service.SearchReader;
+import com.github.rmannibucau.jira.reporter.stub.SyntheticIssues;
+
+/**
+ * Measures the CPU side of a report on synthetic payloads: search response parsing, graph assembly,
+ * elements serialization and the whole chain. Run with {@code -prof gc} to get the allocation rate.
+ */
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ReportBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int issues;
+
+    @Param("3")
+    private int linksPerIssue;
+
+    private byte[] payload;
+
+    private Map<String, Jira.JiraIssue> graphIssues;
+
+    private Cytoscape cytoscape;
+
+    private Jira jira;
+
+    private IconCache iconCache;
+
+    private ReportGenerator generator;
+
+    private SearchReader reader;
+
+    private Jsonb jsonb;
+
+    @Setup
+    public void setup() {
+        payload = SyntheticIssues.toJson(SyntheticIssues.generate(issues, linksPerIssue, .1, "http://localhost", 1234));
+        // no avatar for the graph to not hit the network
+        graphIssues = SyntheticIssues.generate(issues, linksPerIssue, .1, null, 1234).stream()
+                .collect(toMap(Jira.JiraIssue::getId, identity()));
+        jira = new Jira("http://localhost", null, null, 1000);
+        iconCache = new IconCache(null);
+        generator = new ReportGenerator(jira, null, null, iconCache, null, false, 0);
+        reader = new SearchReader(Jira.DEFAULT_FIELDS);
+        jsonb = JsonbBuilder.create();
+        cytoscape = generator.build(graphIssues);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        jsonb.close();
+        iconCache.close();
+        jira.close();
+    }
+
+    @Benchmark
+    public Jira.JiraIssues parseStreaming() {
+        return reader.read(new ByteArrayInputStream(payload));
+    }
+
+    // the binding used before the streaming reader, kept as a reference
+    @Benchmark
+    public Jira.JiraIssues parseJsonb() {
+        return jsonb.fromJson(new ByteArrayInputStream(payload), Jira.JiraIssues.class);
+    }
+
+    @Benchmark
+    public Cytoscape buildGraph() {
+        return generator.build(graphIssues);
+    }
+
+    @Benchmark
+    public long writeHtml() throws IOException {
+        final CountingWriter writer = new CountingWriter();
+        cytoscape.write("Benchmark", writer, false);
+        return writer.count;
+    }
+
+    @Benchmark
+    public long endToEnd() throws IOException {
+        final Collection<Jira.JiraIssue> parsed = reader.read(new ByteArrayInputStream(payload)).getIssues();
+        parsed.forEach(it -> it.getFields().setProject(null)); // no network
+        final CountingWriter writer = new CountingWriter();
+        generator.build(parsed.stream().collect(toMap(Jira.JiraIssue::getId, identity()))).write("Benchmark", writer, false);
+        return writer.count;
+    }
+
+    // discards the output, only counts it to avoid dead code elimination
+    private static class CountingWriter extends Writer {
+
+        private long count;
+
+        @Override
+        public void write(final char[] buffer, final int off, final int len) {
+            count += len;
+        }
+
+        @Override
+        public void write(final String str, final int off, final int len) {
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+            // no-op
+        }
+
+        @Override
+        public void close() {
+            // no-op
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rmannibucau.jira.reporter.service.HttpTransport;
+import com.github.rmannibucau.jira.reporter.service.Jira;
+import com.github.rmannibucau.jira.reporter.service.RequestScheduler;
+import com.github.rmannibucau.jira.reporter.service.Stats;
+import com.github.rmannibucau.jira.reporter.stub.StubJira;
+import com.github.rmannibucau.jira.reporter.stub.SyntheticIssues;
+
+/**
+ * Cold start of a transport: each fork creates the client and runs a first (paginated) query,
+ * which is what a short command line run pays. {@link CrawlBenchmark} compares the throughput.
+ */
+@Fork(10)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class TransportBenchmark {
+
+    @Param({"cxf", "jdk"})
+    private String transport;
+
+    private StubJira stub;
+
+    private String base;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        final int port = StubJira.freePort();
+        stub = new StubJira(SyntheticIssues.generate(500, 2, 0, null, 1234), 500);
+        base = stub.start(port);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        stub.close();
+    }
+
+    @Benchmark
+    public long firstQuery() {
+        try (final Jira jira = new Jira(base, null, null, HttpTransport.create(transport, 60000, 60000, 4),
+                100, 4, Jira.DEFAULT_FIELDS, Jira.DEFAULT_URL_BUDGET, new RequestScheduler(4, 0, 10, new Stats()))) {
+            return jira.query("project = CORE", new String[0]).count();
+        }
+    }
+}
@@ -15,31 +15,55 @@
  */
 package com.github.rmannibucau.jira.reporter.command;
 
-import static java.util.Optional.ofNullable;
-import static java.util.function.Function.identity;
-import static java.util.stream.Collectors.toMap;
+import static java.util.Collections.singletonList;
 
-import java.io.FileNotFoundException;
+import java.io.BufferedWriter;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import org.tomitribe.crest.api.Command;
 import org.tomitribe.crest.api.Default;
+import org.tomitribe.crest.api.Err;
 import org.tomitribe.crest.api.Option;
 import org.tomitribe.crest.api.Out;
 
 import com.github.rmannibucau.jira.reporter.interceptors.DefaultParams;
 import com.github.rmannibucau.jira.reporter.interceptors.ExceptionHandler;
 import com.github.rmannibucau.jira.reporter.service.Cytoscape;
+import com.github.rmannibucau.jira.reporter.service.DependencyCrawler;
+import com.github.rmannibucau.jira.reporter.service.Federation;
+import com.github.rmannibucau.jira.reporter.service.GraphAnalytics;
+import com.github.rmannibucau.jira.reporter.service.ForceLayout;
+import com.github.rmannibucau.jira.reporter.service.GraphPartitioner;
+import com.github.rmannibucau.jira.reporter.service.GraphSnapshot;
+import com.github.rmannibucau.jira.reporter.service.Html;
+import com.github.rmannibucau.jira.reporter.service.HttpTransport;
+import com.github.rmannibucau.jira.reporter.service.IconCache;
+import com.github.rmannibucau.jira.reporter.service.IssueGraph;
+import com.github.rmannibucau.jira.reporter.service.IssueStore;
 import com.github.rmannibucau.jira.reporter.service.Jira;
-import com.github.rmannibucau.jira.reporter.service.Jira.Project;
+import com.github.rmannibucau.jira.reporter.service.JiraInstance;
+import com.github.rmannibucau.jira.reporter.service.ReportDefinition;
+import com.github.rmannibucau.jira.reporter.service.ReportGenerator;
+import com.github.rmannibucau.jira.reporter.service.ReportServer;
+import com.github.rmannibucau.jira.reporter.service.RequestScheduler;
+import com.github.rmannibucau.jira.reporter.service.SearchJournal;
+import com.github.rmannibucau.jira.reporter.service.Stats;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -47,10 +71,6 @@ import lombok.extern.slf4j.Slf4j;
 @Command("jira")
 public class JiraCommand {
 
-    private static Map<String, Jira.JiraIssue> issues;
-
-    private static String firstIcon;
-
     @Command(interceptedBy = {
             DefaultParams.class,
             ExceptionHandler.class
@@ -59,115 +79,424 @@ public class JiraCommand {
                               @Option("username") @Default("${env.USER}") final String username,
                               @Option("password") final String password,
                               @Option("jql") final String jql,
+                              @Option("instances") final String[] instances,
                               @Option("exclude-status") final String[] excludedStatuses,
                               @Option("timeout") @Default("60000") final long timeout,
+                              @Option("read-timeout") @Default("60000") final long readTimeout,
+                              @Option("transport") @Default(Jira.DEFAULT_TRANSPORT) final String transport,
                               @Option("output") @Default("stdout") final String output,
                               @Option("title") @Default("Report") final String title,
-                              @Out final PrintStream stdout) throws FileNotFoundException {
-        try (final Jira jira = new Jira(url, username, password, timeout);
-             final PrintStream out = "stdout".equalsIgnoreCase(output) ?
-                     new PrintStream(stdout) {
-                         @Override
-                         public void close() {
-                             flush();
-                         }
-                     } : new PrintStream(new FileOutputStream(output))) {
-            final Cytoscape cytoscape = new Cytoscape();
-
-            // start by loading matching issues
-            issues = jira.query(jql, excludedStatuses)
-                                                           .collect(toMap(Jira.JiraIssue::getId, identity()));
-
-            Collection<Jira.JiraIssue> values = new ArrayList<>(issues.values());
-            for (Jira.JiraIssue i : values) {
-                loadDependencies(i, jira, excludedStatuses);
+                              @Option("max-depth") @Default("-1") final int maxDepth,
+                              @Option("expansion") @Default("full") final String expansion,
+                              @Option("max-issues") @Default("-1") final int maxIssues,
+                              @Option("dependency-chunk-size") @Default("100") final int dependencyChunkSize,
+                              @Option("page-size") @Default("100") final int pageSize,
+                              @Option("page-concurrency") @Default("4") final int pageConcurrency,
+                              @Option("cache-directory") @Default("${user.home}/.jira-reporter/cache") final String cacheDirectory,
+                              @Option("full-refresh") @Default("false") final boolean fullRefresh,
+                              @Option("resume") @Default("false") final boolean resume,
+                              @Option("reconcile-interval") @Default("86400000") final long reconcileInterval,
+                              @Option("pretty") @Default("false") final boolean pretty,
+                              @Option("chunk-size") @Default("0") final int chunkSize,
+                              @Option("fields") @Default(Jira.DEFAULT_FIELDS) final String fields,
+                              @Option("url-budget") @Default("4096") final int urlBudget,
+                              @Option("max-concurrency") @Default("16") final int maxConcurrency,
+                              @Option("max-retries") @Default("5") final int maxRetries,
+                              @Option("layout") @Default("browser") final String layout,
+                              @Option("layout-iterations") @Default("300") final int layoutIterations,
+                              @Option("layout-seed") @Default("1") final long layoutSeed,
+                              @Option("split") @Default("none") final String split,
+                              @Option("snapshot") final String snapshot,
+                              @Option("diff-against") final String diffAgainst,
+                              @Option("diff-mode") @Default("full") final String diffMode,
+                              @Option("analysis") final String analysis,
+                              @Option("stats") @Default("false") final boolean printStats,
+                              @Option("stats-file") final String statsFile,
+                              @Option("stats-format") @Default("json") final String statsFormat,
+                              @Out final PrintStream stdout,
+                              @Err final PrintStream stderr) throws IOException {
+        final Stats stats = new Stats();
+        final String requestedFields = fields(fields, ReportGenerator.FIELDS,
+                snapshot != null || diffAgainst != null ? GraphSnapshot.FIELDS : null,
+                analysis != null ? GraphAnalytics.FIELDS : null);
+        try (final Jira jira = new Jira(url, username, password,
+                     HttpTransport.create(transport, timeout, readTimeout, maxConcurrency), pageSize, pageConcurrency, requestedFields, urlBudget,
+                     new RequestScheduler(maxConcurrency, maxRetries, Jira.DEFAULT_BACKOFF, stats));
+             final IconCache iconCache = new IconCache("none".equalsIgnoreCase(cacheDirectory) ?
+                     null : Paths.get(cacheDirectory, "icons"));
+             final Federation federation = new Federation()) {
+            final DependencyCrawler crawler = crawler(jira, expansion, maxDepth, maxIssues, dependencyChunkSize);
+            final IssueStore store = "none".equalsIgnoreCase(cacheDirectory) ?
+                    null : IssueStore.load(Paths.get(cacheDirectory), url, jira.getFields());
+            final ReportGenerator generator = new ReportGenerator(jira, crawler, store, iconCache,
+                    layout(layout, layoutIterations, layoutSeed), fullRefresh, reconcileInterval);
+            JiraInstance.load(DefaultParams.properties(), instances, username, password, jql).values().forEach(instance -> {
+                final Jira client = new Jira(instance.getBaseUrl(), instance.getUsername(), instance.getPassword(),
+                        HttpTransport.create(transport, timeout, readTimeout, maxConcurrency), pageSize, pageConcurrency, requestedFields, urlBudget,
+                        // the instances are fetched in parallel, their phases are recorded per instance
+                        new RequestScheduler(maxConcurrency, maxRetries, Jira.DEFAULT_BACKOFF, stats.scope(instance.getName())));
+                federation.add(instance, client, new ReportGenerator(client,
+                        crawler(client, expansion, maxDepth, maxIssues, dependencyChunkSize),
+                        "none".equalsIgnoreCase(cacheDirectory) ?
+                                null : IssueStore.load(Paths.get(cacheDirectory), instance.getBaseUrl(), client.getFields()),
+                        iconCache, null, fullRefresh, reconcileInterval));
+            });
+            final GraphPartitioner.Mode partitioning = partitioning(split);
+            final boolean deltaOnly = deltaOnly(diffMode);
+            if (diffAgainst != null && partitioning != null) {
+                throw new IllegalArgumentException("--diff-against can't be used with --split");
             }
-
-            // load icons (as few times as possible)
-            final Map<String, String> projectIcons = issues.values().stream()
-                    .map(JiraCommand::getIcon)
-                    .distinct().parallel()
-                    .collect(toMap(identity(), jira::getIcon));
-
-            // build the graph
-            issues.values().forEach(issue -> {
-                    cytoscape.getElements().addNode(new Cytoscape.NodeData(
-                            issue.getId(), projectIcons.get(getIcon(issue)),
-                            issue.getFields().getSummary(),
-                            issue.getKey(),
-                            url + "/browse/" + issue.getKey()
-                    ));
-                    ofNullable(issue.getFields().getIssuelinks()).ifPresent(links -> links.forEach(link -> {
-                        if (link.getInwardIssue() != null && issues.containsKey(link.getInwardIssue().getId())) {
-                            cytoscape.getElements().addEdge(new Cytoscape.EdgeData(link.getInwardIssue().getId(), issue.getId()));
-                        }
-                        if (link.getOutwardIssue() != null && issues.containsKey(link.getOutwardIssue().getId())) {
-                            cytoscape.getElements().addEdge(new Cytoscape.EdgeData(issue.getId(), link.getOutwardIssue().getId()));
+            if (chunkSize > 0 && partitioning == null && "stdout".equalsIgnoreCase(output)) {
+                throw new IllegalArgumentException("--chunk-size requires --output to be a file");
+            }
+            final SearchJournal journal = journal(cacheDirectory, resume,
+                    url, jira.getFields(), jql, String.join(",", excludedStatuses), federation.getBaseUrls().toString());
+            // all the clients share the journal, its records are keyed by base url
+            final Collection<Jira> clients = new ArrayList<>(federation.getClients().values());
+            clients.add(jira);
+            // the issues of all the instances are merged in a single report
+            final Supplier<Cytoscape> fetch = () -> {
+                final Cytoscape cytoscape = generator.graph(journaled(clients, journal,
+                        () -> federation.fetch(() -> generator.fetch(jql, excludedStatuses), excludedStatuses)),
+                        id -> federation.client(id, jira));
+                cytoscape.getInstances().putAll(federation.getBaseUrls());
+                return cytoscape;
+            };
+            if (partitioning == null) {
+                // read before running since the snapshot can be overwritten by this run
+                final IssueGraph previous = diffAgainst == null ? null : GraphSnapshot.read(Paths.get(diffAgainst));
+                final Cytoscape cytoscape = fetch.get();
+                if (snapshot != null) {
+                    stats.time("snapshot", () -> GraphSnapshot.write(cytoscape.getGraph(), Paths.get(snapshot)));
+                }
+                if (previous != null) {
+                    generator.diff(cytoscape, previous, deltaOnly);
+                }
+                if (analysis != null) {
+                    writeAnalysis(generator.analyze(cytoscape), analysis);
+                }
+                generator.layout(cytoscape);
+                stats.time("render", () -> {
+                    if (chunkSize > 0) {
+                        cytoscape.writeChunked(title, Paths.get(output), chunkSize);
+                    } else {
+                        try (final Writer out = open(output, stdout)) {
+                            cytoscape.write(title, out, pretty);
                         }
-                    }));
+                    }
                 });
-            out.println(cytoscape.asHtml(title));
+            } else {
+                if ("stdout".equalsIgnoreCase(output)) {
+                    throw new IllegalArgumentException("--split requires --output to be a directory");
+                }
+                final Cytoscape whole = fetch.get();
+                if (snapshot != null) {
+                    stats.time("snapshot", () -> GraphSnapshot.write(whole.getGraph(), Paths.get(snapshot)));
+                }
+                if (analysis != null) {
+                    writeAnalysis(generator.analyze(whole), analysis);
+                }
+                final Map<String, Cytoscape> reports = generator.split(whole, partitioning);
+                stats.time("render", () -> writeSplit(title, Paths.get(output), reports, pretty, chunkSize));
+            }
             log.info("Created report at '{}'", output);
         }
+        if (printStats) {
+            stats.print(stderr);
+        }
+        if (statsFile != null) {
+            writeStats(stats, statsFile, statsFormat);
+        }
+    }
+
+    @Command(interceptedBy = {
+            DefaultParams.class,
+            ExceptionHandler.class
+    })
+    public static void serve(@Option("base-url") final String url,
+                             @Option("username") @Default("${env.USER}") final String username,
+                             @Option("password") final String password,
+                             @Option("reports") final String reports,
+                             @Option("exclude-status") final String[] excludedStatuses,
+                             @Option("timeout") @Default("60000") final long timeout,
+                             @Option("read-timeout") @Default("60000") final long readTimeout,
+                             @Option("transport") @Default(Jira.DEFAULT_TRANSPORT) final String transport,
+                             @Option("host") @Default("localhost") final String host,
+                             @Option("port") @Default("8080") final int port,
+                             @Option("refresh-interval") @Default("900000") final long refreshInterval,
+                             @Option("icon-ttl") @Default("3600000") final long iconTtl,
+                             @Option("max-depth") @Default("-1") final int maxDepth,
+                             @Option("max-issues") @Default("-1") final int maxIssues,
+                             @Option("expansion") @Default("full") final String expansion,
+                             @Option("dependency-chunk-size") @Default("100") final int dependencyChunkSize,
+                             @Option("page-size") @Default("100") final int pageSize,
+                             @Option("page-concurrency") @Default("4") final int pageConcurrency,
+                             @Option("cache-directory") @Default("${user.home}/.jira-reporter/cache") final String cacheDirectory,
+                             @Option("reconcile-interval") @Default("86400000") final long reconcileInterval,
+                             @Option("pretty") @Default("false") final boolean pretty,
+                             @Option("fields") @Default(Jira.DEFAULT_FIELDS) final String fields,
+                             @Option("url-budget") @Default("4096") final int urlBudget,
+                             @Option("max-concurrency") @Default("16") final int maxConcurrency,
+                             @Option("max-retries") @Default("5") final int maxRetries,
+                             @Option("layout") @Default("browser") final String layout,
+                             @Option("layout-iterations") @Default("300") final int layoutIterations,
+                             @Option("layout-seed") @Default("1") final long layoutSeed) throws IOException, InterruptedException {
+        final Map<String, ReportDefinition> definitions = ReportDefinition.load(Paths.get(reports), excludedStatuses);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        try (final Jira jira = new Jira(url, username, password,
+                     HttpTransport.create(transport, timeout, readTimeout, maxConcurrency), pageSize, pageConcurrency,
+                     fields(fields, ReportGenerator.FIELDS), urlBudget,
+                     new RequestScheduler(maxConcurrency, maxRetries, Jira.DEFAULT_BACKOFF, new Stats()));
+             final IconCache iconCache = new IconCache("none".equalsIgnoreCase(cacheDirectory) ?
+                     null : Paths.get(cacheDirectory, "icons"), iconTtl)) {
+            final DependencyCrawler crawler = crawler(jira, expansion, maxDepth, maxIssues, dependencyChunkSize);
+            // the store stays in memory between two refreshes so only updated issues are fetched
+            final IssueStore store = "none".equalsIgnoreCase(cacheDirectory) ?
+                    IssueStore.inMemory(url, jira.getFields()) : IssueStore.load(Paths.get(cacheDirectory), url, jira.getFields());
+            final ReportGenerator generator = new ReportGenerator(jira, crawler, store, iconCache,
+                    layout(layout, layoutIterations, layoutSeed), false, reconcileInterval);
+            try (final ReportServer server = new ReportServer(generator, definitions, pretty)) {
+                server.start(host, port, refreshInterval);
+                Runtime.getRuntime().addShutdownHook(new Thread(stopped::countDown, "jira-reporter-shutdown"));
+                stopped.await();
+            }
+        }
     }
 
-    private static void loadDependencies(Jira.JiraIssue issue, Jira jira, final String[] excludedStatuses){
-        //Collection<Jira.JiraIssue> links = issue.getFields().getIssuelinks();
-        StringBuilder ids = new StringBuilder();
-
-        List<Jira.JiraIssue> missings = issue.getFields().getIssuelinks().stream()
-                .flatMap(l -> Stream.of(l.getInwardIssue(), l.getOutwardIssue())
-                .filter(Objects::nonNull))
-                .filter(i -> !issues.containsKey(i.getId())).collect(Collectors.toList());
-
-        for(Jira.JiraIssue i : missings){
-            if(!issues.containsKey(i.getId())){
-                List<Jira.JiraIssue> res =
-                        jira.query("id = " + i.getId(), excludedStatuses).collect(Collectors.toList());
-
-                if(res.size() == 1) {
-                    Jira.JiraIssue jiraIssue = res.get(0);
-                    issues.put(jiraIssue.getId(), jiraIssue);
-                    if (ids.length() > 0) {
-                        ids.append(",");
+    @Command(interceptedBy = {
+            DefaultParams.class,
+            ExceptionHandler.class
+    })
+    public static void batch(@Option("base-url") final String url,
+                             @Option("username") @Default("${env.USER}") final String username,
+                             @Option("password") final String password,
+                             @Option("reports") final String reports,
+                             @Option("exclude-status") final String[] excludedStatuses,
+                             @Option("timeout") @Default("60000") final long timeout,
+                             @Option("read-timeout") @Default("60000") final long readTimeout,
+                             @Option("transport") @Default(Jira.DEFAULT_TRANSPORT) final String transport,
+                             @Option("output-directory") @Default(".") final String outputDirectory,
+                             @Option("max-depth") @Default("-1") final int maxDepth,
+                             @Option("max-issues") @Default("-1") final int maxIssues,
+                             @Option("expansion") @Default("full") final String expansion,
+                             @Option("dependency-chunk-size") @Default("100") final int dependencyChunkSize,
+                             @Option("page-size") @Default("100") final int pageSize,
+                             @Option("page-concurrency") @Default("4") final int pageConcurrency,
+                             @Option("cache-directory") @Default("${user.home}/.jira-reporter/cache") final String cacheDirectory,
+                             @Option("full-refresh") @Default("false") final boolean fullRefresh,
+                             @Option("resume") @Default("false") final boolean resume,
+                             @Option("reconcile-interval") @Default("86400000") final long reconcileInterval,
+                             @Option("pretty") @Default("false") final boolean pretty,
+                             @Option("fields") @Default(Jira.DEFAULT_FIELDS) final String fields,
+                             @Option("url-budget") @Default("4096") final int urlBudget,
+                             @Option("max-concurrency") @Default("16") final int maxConcurrency,
+                             @Option("max-retries") @Default("5") final int maxRetries,
+                             @Option("layout") @Default("browser") final String layout,
+                             @Option("layout-iterations") @Default("300") final int layoutIterations,
+                             @Option("layout-seed") @Default("1") final long layoutSeed,
+                             @Option("stats") @Default("false") final boolean printStats,
+                             @Option("stats-file") final String statsFile,
+                             @Option("stats-format") @Default("json") final String statsFormat,
+                             @Err final PrintStream stderr) throws IOException {
+        final Map<String, ReportDefinition> definitions = ReportDefinition.load(Paths.get(reports), excludedStatuses);
+        final Stats stats = new Stats();
+        try (final Jira jira = new Jira(url, username, password,
+                     HttpTransport.create(transport, timeout, readTimeout, maxConcurrency), pageSize, pageConcurrency,
+                     fields(fields, ReportGenerator.FIELDS), urlBudget,
+                     new RequestScheduler(maxConcurrency, maxRetries, Jira.DEFAULT_BACKOFF, stats));
+             final IconCache iconCache = new IconCache("none".equalsIgnoreCase(cacheDirectory) ?
+                     null : Paths.get(cacheDirectory, "icons"))) {
+            final DependencyCrawler crawler = crawler(jira, expansion, maxDepth, maxIssues, dependencyChunkSize);
+            final IssueStore store = "none".equalsIgnoreCase(cacheDirectory) ?
+                    null : IssueStore.load(Paths.get(cacheDirectory), url, jira.getFields());
+            final ReportGenerator generator = new ReportGenerator(jira, crawler, store, iconCache,
+                    layout(layout, layoutIterations, layoutSeed), fullRefresh, reconcileInterval);
+            final SearchJournal journal = journal(cacheDirectory, resume, Stream.concat(
+                    Stream.of(url, jira.getFields(), String.join(",", excludedStatuses)),
+                    definitions.values().stream().map(it -> it.getName() + '=' + it.getJql())).toArray(String[]::new));
+            final Map<String, Map<String, Jira.JiraIssue>> issues = journaled(singletonList(jira), journal,
+                    () -> generator.fetch(definitions.values()));
+            stats.time("render", () -> definitions.values().parallelStream().forEach(definition -> {
+                    final Path output = definition.getOutput() == null ?
+                            Paths.get(outputDirectory, definition.getName() + ".html") : Paths.get(definition.getOutput());
+                    try {
+                        if (output.getParent() != null) {
+                            Files.createDirectories(output.getParent());
+                        }
+                        try (final Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+                            generator.build(issues.get(definition.getName())).write(definition.getTitle(), writer, pretty);
+                        }
+                    } catch (final IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    log.info("Created report '{}' at '{}'", definition.getName(), output);
+                }));
+        }
+        if (printStats) {
+            stats.print(stderr);
+        }
+        if (statsFile != null) {
+            writeStats(stats, statsFile, statsFormat);
+        }
+    }
+
+    private static Writer open(final String output, final PrintStream stdout) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter("stdout".equalsIgnoreCase(output) ?
+                new FilterOutputStream(stdout) {
+                    @Override
+                    public void write(final byte[] b, final int off, final int len) throws IOException {
+                        out.write(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        flush();
+                    }
+                } : new FileOutputStream(output), StandardCharsets.UTF_8));
+    }
+
+    private static void writeSplit(final String title, final Path directory, final Map<String, Cytoscape> reports,
+                                   final boolean pretty, final int chunkSize) throws IOException {
+        Files.createDirectories(directory);
+        final Map<String, String> files = GraphPartitioner.fileNames(reports.keySet());
+        reports.entrySet().parallelStream().forEach(report -> {
+            final Path file = directory.resolve(files.get(report.getKey()));
+            try {
+                if (chunkSize > 0) {
+                    report.getValue().writeChunked(title + " - " + report.getKey(), file, chunkSize);
+                } else {
+                    try (final Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                        report.getValue().write(title + " - " + report.getKey(), writer, pretty);
                     }
-                    ids.append(jiraIssue.getId());
                 }
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
             }
+        });
+        try (final Writer writer = Files.newBufferedWriter(directory.resolve("index.html"), StandardCharsets.UTF_8)) {
+            writer.write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=utf-8 />\n<title>");
+            writer.write(Html.escape(title));
+            writer.write("</title>\n</head>\n<body>\n<h1>");
+            writer.write(Html.escape(title));
+            writer.write("</h1>\n<ul>\n");
+            for (final Map.Entry<String, Cytoscape> report : reports.entrySet()) {
+                writer.write("<li><a href=\"" + Html.encodePathSegment(files.get(report.getKey())) + "\">"
+                        + Html.escape(report.getKey()) + "</a> ("
+                        + report.getValue().getGraph().nodeCount() + " issues, "
+                        + report.getValue().getGraph().edgeCount() + " links)</li>\n");
+            }
+            writer.write("</ul>\n</body>\n</html>\n");
+        }
+    }
 
+    // the features read some fields, request them even if --fields does not list them
+    private static String fields(final String requested, final String... features) {
+        final String fields = Jira.fields(requested, Jira.fields(features));
+        if (!fields.equals(Jira.fields(requested))) {
+            log.info("Requesting fields '{}' since the enabled features read them", fields);
         }
+        return fields;
+    }
 
-        if(ids.length() > 0){
-            List<Jira.JiraIssue> deps = jira.query("id in (" + ids + ")", excludedStatuses).collect(Collectors.toList());
-            for(Jira.JiraIssue i : deps){
-                loadDependencies(i, jira, excludedStatuses);
-            }
+    // a shallow report only shows the direct dependencies unless a depth is requested
+    private static DependencyCrawler crawler(final Jira jira, final String expansion, final int maxDepth, final int maxIssues,
+                                             final int chunkSize) {
+        final boolean shallow = shallow(expansion);
+        return new DependencyCrawler(jira, shallow && maxDepth < 0 ? 1 : maxDepth, maxIssues, chunkSize, shallow);
+    }
+
+    private static boolean shallow(final String expansion) {
+        switch (expansion.toLowerCase(Locale.ROOT)) {
+            case "full":
+                return false;
+            case "shallow":
+                return true;
+            default:
+                throw new IllegalArgumentException("Unsupported expansion: '" + expansion + "', use full or shallow");
         }
     }
 
-    private static String getIcon(final Jira.JiraIssue issue) {
+    private static boolean deltaOnly(final String diffMode) {
+        switch (diffMode.toLowerCase(Locale.ROOT)) {
+            case "full":
+                return false;
+            case "delta":
+                return true;
+            default:
+                throw new IllegalArgumentException("Unsupported diff mode: '" + diffMode + "', use full or delta");
+        }
+    }
 
-        Project prj = issue.getFields().getProject();
-        if(prj == null){
-            return "";
+    private static GraphPartitioner.Mode partitioning(final String split) {
+        switch (split.toLowerCase(Locale.ROOT)) {
+            case "none":
+                return null;
+            case "component":
+                return GraphPartitioner.Mode.COMPONENT;
+            case "project":
+                return GraphPartitioner.Mode.PROJECT;
+            default:
+                throw new IllegalArgumentException("Unsupported split: '" + split + "', use none, component or project");
         }
+    }
 
-       String icon = "";
-       try {
-           icon = ofNullable(issue.getFields().getProject().getAvatarUrls().get("32x32")).orElseGet(() -> {
-               final Map<String, String> urls = issue.getFields().getProject().getAvatarUrls();
-               return urls.isEmpty() ? "" : urls.values().iterator().next();
-           });
-       }
-       catch(Exception e){
-           log.error("Can't retrieve icon => " + e.getMessage());
-           e.printStackTrace();
-       }
+    private static ForceLayout layout(final String layout, final int iterations, final long seed) {
+        switch (layout.toLowerCase(Locale.ROOT)) {
+            case "browser":
+                return null;
+            case "server":
+                return new ForceLayout(iterations, seed);
+            default:
+                throw new IllegalArgumentException("Unsupported layout: '" + layout + "', use browser or server");
+        }
+    }
 
-        if (firstIcon == null) {
-           firstIcon = icon;
+    private static SearchJournal journal(final String cacheDirectory, final boolean resume, final String... run) {
+        if ("none".equalsIgnoreCase(cacheDirectory)) {
+            if (resume) {
+                throw new IllegalArgumentException("--resume requires a --cache-directory");
+            }
+            return null;
         }
+        return SearchJournal.open(SearchJournal.file(Paths.get(cacheDirectory), run), resume);
+    }
 
-       return icon;
+    // the journal is only kept when the fetch fails, a successful run has nothing to resume
+    private static <T> T journaled(final Collection<Jira> clients, final SearchJournal journal, final Supplier<T> fetch) {
+        if (journal == null) {
+            return fetch.get();
+        }
+        clients.forEach(client -> client.setJournal(journal));
+        try {
+            final T result = fetch.get();
+            journal.delete();
+            return result;
+        } finally {
+            clients.forEach(client -> client.setJournal(null));
+            journal.close();
+        }
+    }
+
+    private static void writeAnalysis(final GraphAnalytics.Result analysis, final String file) throws IOException {
+        try (final Writer writer = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+            analysis.writeJson(writer, true);
+        }
+        log.info("Wrote analysis to '{}'", file);
+    }
+
+    private static void writeStats(final Stats stats, final String file, final String format) throws IOException {
+        try (final Writer writer = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+            switch (format.toLowerCase(Locale.ROOT)) {
+                case "json":
+                    stats.writeJson(writer, true);
+                    break;
+                case "prometheus":
+                    writer.write(stats.toPrometheus());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported stats format: '" + format + "', use json or prometheus");
+            }
+        }
+        log.info("Wrote statistics to '{}'", file);
     }
 }
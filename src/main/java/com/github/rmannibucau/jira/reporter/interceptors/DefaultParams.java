@@ -35,6 +35,14 @@ public class DefaultParams {
     private final Map<String, String> values = new HashMap<>();
 
     public DefaultParams() {
+        values.putAll(properties());
+    }
+
+    /**
+     * @return the content of {@code ~/.jira-reporter.properties} (base64 values decoded), empty if it does not exist.
+     */
+    public static Map<String, String> properties() {
+        final Map<String, String> values = new HashMap<>();
         final File file = new File(System.getProperty("user.home"), ".jira-reporter.properties");
         if (file.exists()) {
             try (final FileReader reader = new FileReader(file)) {
@@ -52,6 +60,7 @@ public class DefaultParams {
         } else {
             log.debug("No {} available", file);
         }
+        return values;
     }
 
     @CrestInterceptor
@@ -73,6 +82,12 @@ public class DefaultParams {
         if (parameterMetadata.getReflectType() == long.class) {
             return Long.parseLong(value.trim());
         }
+        if (parameterMetadata.getReflectType() == int.class) {
+            return Integer.parseInt(value.trim());
+        }
+        if (parameterMetadata.getReflectType() == boolean.class) {
+            return Boolean.parseBoolean(value.trim());
+        }
         if (parameterMetadata.getReflectType() == String[].class) {
             return value.trim().split(",");
         }
@@ -15,12 +15,11 @@
  */
 package com.github.rmannibucau.jira.reporter.interceptors;
 
-import javax.ws.rs.WebApplicationException;
-import javax.ws.rs.core.Response;
-
 import org.tomitribe.crest.api.interceptor.CrestContext;
 import org.tomitribe.crest.api.interceptor.CrestInterceptor;
 
+import com.github.rmannibucau.jira.reporter.service.HttpException;
+
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -36,10 +35,8 @@ public class ExceptionHandler {
     }
 
     private String stringify(final RuntimeException re) {
-        if (WebApplicationException.class.isInstance(re.getCause())) {
-            final WebApplicationException wae = WebApplicationException.class.cast(re.getCause());
-            final Response response = wae.getResponse();
-            return "HTTP " + response.getStatus() + ": " + (response.hasEntity() ? response.readEntity(String.class) : "-");
+        if (HttpException.class.isInstance(re.getCause())) {
+            return re.getCause().getMessage();
         }
         return re.getMessage();
     }
@@ -0,0 +1,57 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import lombok.Getter;
+
+@Getter
+class CountingInputStream extends FilterInputStream {
+
+    private long count;
+
+    CountingInputStream(final InputStream delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int read = super.read();
+        if (read >= 0) {
+            count++;
+        }
+        return read;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int read = super.read(b, off, len);
+        if (read > 0) {
+            count += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        final long skipped = super.skip(n);
+        count += skipped;
+        return skipped;
+    }
+}
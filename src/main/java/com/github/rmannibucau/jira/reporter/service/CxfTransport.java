@@ -0,0 +1,88 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.Response;
+
+/**
+ * JAX-RS (CXF) transport using the rx() API, the requests run on a bounded executor.
+ */
+class CxfTransport implements HttpTransport {
+
+    private final ExecutorService executor;
+
+    private final Client client;
+
+    CxfTransport(final long connectTimeout, final long readTimeout, final int maxConnections) {
+        executor = Executors.newFixedThreadPool(Math.max(1, maxConnections), new NamedThreadFactory("jira-reporter-io-"));
+        client = ClientBuilder.newBuilder()
+                .executorService(executor)
+                .connectTimeout(connectTimeout, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeout, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> get(final String uri, final Map<String, String> headers) {
+        try {
+            final Invocation.Builder request = client.target(uri).request();
+            headers.forEach(request::header);
+            return request.rx().get().toCompletableFuture()
+                    .handle((response, error) -> {
+                        if (error != null) {
+                            throw toUnchecked(error);
+                        }
+                        return new HttpResponse(response.getStatus(), response::getHeaderString, readBody(response));
+                    });
+        } catch (final ProcessingException pe) {
+            final CompletableFuture<HttpResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(toUnchecked(pe));
+            return failed;
+        }
+    }
+
+    @Override
+    public void close() {
+        client.close();
+        executor.shutdownNow();
+    }
+
+    private static InputStream readBody(final Response response) {
+        return response.hasEntity() ? response.readEntity(InputStream.class) : null;
+    }
+
+    private static RuntimeException toUnchecked(final Throwable error) {
+        final Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof ProcessingException) {
+            return new UncheckedIOException(new IOException(cause.getMessage(), cause));
+        }
+        return cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+    }
+}
@@ -15,155 +15,465 @@
  */
 package com.github.rmannibucau.jira.reporter.service;
 
-import static java.util.stream.Collectors.joining;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
 
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
-import javax.json.bind.Jsonb;
-import javax.json.bind.JsonbBuilder;
-import javax.json.bind.JsonbConfig;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
 
-import lombok.AllArgsConstructor;
 import lombok.Data;
 
 @Data
 public class Cytoscape {
 
-    private final Elements elements = new Elements();
-
-    public String asHtml(final String title) {
-        final StringBuilder builder = new StringBuilder("<!DOCTYPE html>\n");
-        builder.append("<html>\n");
-        builder.append("<head>\n");
-        builder.append("<meta charset=utf-8 />\n");
-        builder.append("<title>").append(title).append("</title>\n");
-        builder.append("<style>\n");
-        builder.append("body { \n");
-        builder.append("  font: 14px helvetica neue, helvetica, arial, sans-serif;\n");
-        builder.append("  background: black;\n");
-        builder.append("}\n");
-        builder.append("\n");
-        builder.append("#cy {\n");
-        builder.append("  height: 100%;\n");
-        builder.append("  width: 100%;\n");
-        builder.append("  position: absolute;\n");
-        builder.append("  left: 0;\n");
-        builder.append("  top: 0;\n");
-        builder.append("}\n");
-        builder.append("\n");
-        builder.append("#info {\n");
-        builder.append("  color: #c88;\n");
-        builder.append("  font-size: 1em;\n");
-        builder.append("  position: absolute;\n");
-        builder.append("  z-index: -1;\n");
-        builder.append("  left: 1em;\n");
-        builder.append("  top: 1em;\n");
-        builder.append("}\n");
-        builder.append("</style>\n");
-        builder.append("</head>\n");
-        builder.append("<body>\n");
-        builder.append("<div id=\"detail\"></div>\n");
-        builder.append("<div id=\"cy\"></div>\n");
-        builder.append("<script src=\"https://cdnjs.cloudflare.com/ajax/libs/cytoscape/3.2.22/cytoscape.min.js\" ");
-        builder.append("  integrity=\"sha256-Bqs25OhKdh8ooPMp5xt7cUlfLylUhYzSG6OIAD0DJzM=\" crossorigin=\"anonymous\"></script>\n");
-        builder.append("<script>\n");
-        builder.append("var elements = \n");
-        try (final Jsonb jsonb = JsonbBuilder.create(new JsonbConfig().withFormatting(true))) {
-            builder.append(jsonb.toJson(elements));
-        } catch (final Exception e) {
-            throw new IllegalStateException(e);
-        }
-        builder.append(";\n");
-        builder.append("\n");
-        builder.append("var cy = cytoscape({\n");
-        builder.append("  container: document.getElementById('cy'),\n");
-        builder.append("  elements: elements,\n");
-        builder.append("  boxSelectionEnabled: true,\n");
-        builder.append("  selectionType: 'single',\n");
-        builder.append("  autounselectify: false,\n");
-        builder.append("  style: cytoscape.stylesheet()\n");
-        builder.append("    .selector('node')\n");
-        builder.append("      .css({\n");
-        builder.append("        'content': 'data(name)',\n");
-        builder.append("        'text-valign': 'center',\n");
-        builder.append("        'color': 'white',\n");
-        builder.append("        'text-outline-width': 1,\n");
-        builder.append("        'background-color': 'grey'\n");
-        builder.append("      })\n");
-        builder.append(elements.getNodes().stream().map(Node::getData).filter(it -> !it.getIcon().isEmpty())
-                .map(it -> "    .selector('#" + it.getId() + "').css({ 'background-image': '" + it.getIcon() + "' })\n")
-                .collect(joining()));
-        builder.append(" ,\n");
-        builder.append("  layout: {\n");
-        builder.append("    name: 'cose'\n");
-        builder.append("  }\n");
-        builder.append("}).on('tap', 'node', function(){\n");
-        builder.append("  try {\n");
-        builder.append("    window.open( this.data('href') );\n");
-        builder.append("  } catch (e) {\n");
-        builder.append("    window.location.href = this.data('href');\n");
-        builder.append("  }\n");
-        builder.append("}).on('mouseover', 'node', function(){ document.getElementById('tooltip').innerHTML = this.data('name')+': '+this.data('summary'); });");
-        builder.append("</script>\n");
-        builder.append("<div id='tooltip' style='color: white'></div>\n");
-        builder.append("</body>\n");
-        builder.append("</html>\n");
-        return builder.toString();
+    private IssueGraph graph = IssueGraph.builder().build();
+
+    // prefix of the node links
+    private String baseUrl = "";
+
+    // prefix of the links of the nodes of other instances, indexed by id namespace (see Federation)
+    private final Map<String, String> instances = new HashMap<>();
+
+    // x/y of each node when computed at generation time, null lets the browser compute the layout
+    private double[] positions;
+
+    // css classes of each node and link (indexed as IssueGraph#edgeIndex), null when there is none
+    private String[] nodeClasses;
+
+    private String[] edgeClasses;
+
+    // data uri -> icon identifier referenced by the nodes
+    private final Map<String, String> icons = new LinkedHashMap<>();
+
+    /**
+     * @param dataUri the image to embed.
+     * @return the identifier to use as node icon, the same image is embedded only once.
+     */
+    public synchronized String registerIcon(final String dataUri) {
+        if (dataUri == null || dataUri.isEmpty()) {
+            return "";
+        }
+        return icons.computeIfAbsent(dataUri, k -> "i" + icons.size());
+    }
+
+    /**
+     * Adds css classes to the nodes and links, they are appended to the existing ones.
+     *
+     * @param nodes the classes of each node, null entries are ignored.
+     * @param edges the classes of each link (see {@link IssueGraph#edgeIndex(int, int)}), null entries are ignored.
+     */
+    public void addClasses(final String[] nodes, final String[] edges) {
+        nodeClasses = merge(nodeClasses, nodes);
+        edgeClasses = merge(edgeClasses, edges);
+    }
+
+    /**
+     * @param nodes the nodes to keep.
+     * @return a report of these nodes only, embedding only the icons they use.
+     */
+    public Cytoscape subgraph(final int[] nodes) {
+        final Cytoscape cytoscape = new Cytoscape();
+        final IssueGraph subgraph = graph.subgraph(nodes);
+        cytoscape.setGraph(subgraph);
+        cytoscape.setBaseUrl(baseUrl);
+        cytoscape.getInstances().putAll(instances);
+        if (nodeClasses != null) {
+            final String[] classes = new String[nodes.length];
+            for (int node = 0; node < nodes.length; node++) {
+                classes[node] = nodeClasses[nodes[node]];
+            }
+            cytoscape.setNodeClasses(classes);
+        }
+        if (edgeClasses != null) {
+            final String[] classes = new String[subgraph.edgeCount()];
+            for (int node = 0; node < nodes.length; node++) {
+                for (int i = 0; i < subgraph.outDegree(node); i++) {
+                    classes[subgraph.edgeIndex(node, i)] = edgeClasses[graph.findEdge(nodes[node], nodes[subgraph.target(node, i)])];
+                }
+            }
+            cytoscape.setEdgeClasses(classes);
+        }
+        final Set<String> used = new HashSet<>();
+        for (final int node : nodes) {
+            used.add(graph.icon(node));
+        }
+        synchronized (this) {
+            icons.forEach((dataUri, id) -> {
+                if (used.contains(id)) {
+                    cytoscape.getIcons().put(dataUri, id);
+                }
+            });
+        }
+        return cytoscape;
     }
 
-    @Data
-    @AllArgsConstructor
-    public static class NodeData {
+    /**
+     * Writes the report without materializing it in memory, the caller owns the writer.
+     *
+     * @param title the page title.
+     * @param writer where to write the page.
+     * @param pretty should the elements be formatted.
+     */
+    public void write(final String title, final Writer writer, final boolean pretty) throws IOException {
+        writePage(title, writer, pretty, null);
+    }
 
-        private String id;
+    /**
+     * Writes a page without elements and the elements as NDJSON chunks in a {@code <page name>-elements} directory
+     * next to the page, the browser adds them progressively so the first paint does not depend on the graph size.
+     * The page must be served over http(s) to be able to load its chunks.
+     *
+     * @param title the page title.
+     * @param file the page to write.
+     * @param chunkSize the maximum number of nodes or links per chunk.
+     */
+    public void writeChunked(final String title, final Path file, final int chunkSize) throws IOException {
+        final String name = file.getFileName().toString().replaceFirst("\\.html?$", "") + "-elements";
+        final Path directory = file.resolveSibling(name);
+        Files.createDirectories(directory);
+        try (final Stream<Path> stale = Files.list(directory)) { // a previous run can have more chunks
+            stale.filter(it -> it.getFileName().toString().endsWith(".ndjson")).forEach(it -> {
+                try {
+                    Files.delete(it);
+                } catch (final IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
 
-        private String icon;
+        // nodes first since cytoscape requires the ends of a link to exist when adding it
+        final List<int[]> chunks = new ArrayList<>();
+        for (int node = 0; node < graph.nodeCount(); node += chunkSize) {
+            chunks.add(new int[]{0, node, Math.min(graph.nodeCount(), node + chunkSize)});
+        }
+        int start = 0;
+        int edges = 0;
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            edges += graph.outDegree(node);
+            if (edges >= chunkSize || (node == graph.nodeCount() - 1 && edges > 0)) {
+                chunks.add(new int[]{1, start, node + 1});
+                start = node + 1;
+                edges = 0;
+            }
+        }
+        final List<String> names = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            names.add(name + '/' + (chunks.get(i)[0] == 0 ? "nodes-" : "edges-") + i + ".ndjson");
+        }
+
+        final JsonGeneratorFactory factory = Json.createGeneratorFactory(emptyMap());
+        IntStream.range(0, chunks.size()).parallel().forEach(i -> {
+            final int[] chunk = chunks.get(i);
+            try (final Writer writer = Files.newBufferedWriter(file.resolveSibling(names.get(i)), StandardCharsets.UTF_8)) {
+                for (int node = chunk[1]; node < chunk[2]; node++) {
+                    final int current = node;
+                    if (chunk[0] == 0) {
+                        writeLine(factory, writer, generator -> writeNode(generator.writeStartObject().write("group", "nodes"), current));
+                    } else {
+                        for (int e = 0; e < graph.outDegree(node); e++) {
+                            final int edge = e;
+                            writeLine(factory, writer, generator -> writeEdge(generator.writeStartObject().write("group", "edges"), current, edge));
+                        }
+                    }
+                }
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
 
-        private String summary;
+        try (final Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writePage(title, writer, false, names);
+        }
+    }
 
-        private String name;
+    private void writePage(final String title, final Writer writer, final boolean pretty,
+                           final List<String> chunks) throws IOException {
+        writer.write("<!DOCTYPE html>\n");
+        writer.write("<html>\n");
+        writer.write("<head>\n");
+        writer.write("<meta charset=utf-8 />\n");
+        writer.write("<title>");
+        writer.write(Html.escape(title));
+        writer.write("</title>\n");
+        writer.write("<style>\n");
+        writer.write("body { \n");
+        writer.write("  font: 14px helvetica neue, helvetica, arial, sans-serif;\n");
+        writer.write("  background: black;\n");
+        writer.write("}\n");
+        writer.write("\n");
+        writer.write("#cy {\n");
+        writer.write("  height: 100%;\n");
+        writer.write("  width: 100%;\n");
+        writer.write("  position: absolute;\n");
+        writer.write("  left: 0;\n");
+        writer.write("  top: 0;\n");
+        writer.write("}\n");
+        writer.write("\n");
+        writer.write("#info {\n");
+        writer.write("  color: #c88;\n");
+        writer.write("  font-size: 1em;\n");
+        writer.write("  position: absolute;\n");
+        writer.write("  z-index: -1;\n");
+        writer.write("  left: 1em;\n");
+        writer.write("  top: 1em;\n");
+        writer.write("}\n");
+        writer.write("</style>\n");
+        writer.write("</head>\n");
+        writer.write("<body>\n");
+        writer.write("<div id=\"detail\"></div>\n");
+        writer.write("<div id=\"cy\"></div>\n");
+        writer.write("<script src=\"https://cdnjs.cloudflare.com/ajax/libs/cytoscape/3.2.22/cytoscape.min.js\" ");
+        writer.write("  integrity=\"sha256-Bqs25OhKdh8ooPMp5xt7cUlfLylUhYzSG6OIAD0DJzM=\" crossorigin=\"anonymous\"></script>\n");
+        writer.write("<script>\n");
+        writer.write("var elements = \n");
+        if (chunks == null) {
+            writeElements(writer, pretty);
+        } else {
+            writer.write("[]");
+        }
+        writer.write(";\n");
+        writer.write("\n");
+        writer.write("var cy = cytoscape({\n");
+        writer.write("  container: document.getElementById('cy'),\n");
+        writer.write("  elements: elements,\n");
+        writer.write("  boxSelectionEnabled: true,\n");
+        writer.write("  selectionType: 'single',\n");
+        writer.write("  autounselectify: false,\n");
+        writer.write("  style: cytoscape.stylesheet()\n");
+        writer.write("    .selector('node')\n");
+        writer.write("      .css({\n");
+        writer.write("        'content': 'data(name)',\n");
+        writer.write("        'text-valign': 'center',\n");
+        writer.write("        'color': 'white',\n");
+        writer.write("        'text-outline-width': 1,\n");
+        writer.write("        'background-color': 'grey'\n");
+        writer.write("      })\n");
+        for (final Map.Entry<String, String> icon : icons.entrySet()) {
+            writer.write("    .selector('node[icon = \"" + icon.getValue() + "\"]').css({ 'background-image': '"
+                    + scriptString(icon.getKey()) + "' })\n");
+        }
+        if (nodeClasses != null || edgeClasses != null) {
+            writer.write("    .selector('node.cycle').css({ 'background-color': '#b10dc9' })\n");
+            writer.write("    .selector('node.blocker').css({ 'shape': 'diamond', 'width': 40, 'height': 40 })\n");
+            writer.write("    .selector('node.critical').css({ 'text-outline-color': '#ff851b', 'text-outline-width': 3 })\n");
+            writer.write("    .selector('edge.cycle').css({ 'line-color': '#b10dc9', 'width': 3 })\n");
+            writer.write("    .selector('edge.critical').css({ 'line-color': '#ff851b', 'width': 4 })\n");
+            writer.write("    .selector('node.added').css({ 'border-width': 4, 'border-color': '#2ecc40' })\n");
+            writer.write("    .selector('node.changed').css({ 'border-width': 4, 'border-color': '#ffdc00' })\n");
+            writer.write("    .selector('node.removed').css({ 'border-width': 4, 'border-color': '#ff4136', 'opacity': 0.5 })\n");
+            writer.write("    .selector('edge.added').css({ 'line-color': '#2ecc40' })\n");
+            writer.write("    .selector('edge.changed').css({ 'line-color': '#ffdc00' })\n");
+            writer.write("    .selector('edge.removed').css({ 'line-color': '#ff4136', 'line-style': 'dashed' })\n");
+        }
+        writer.write(" ,\n");
+        writer.write("  layout: {\n");
+        writer.write(positions == null ? "    name: 'cose'\n" : "    name: 'preset'\n");
+        writer.write("  }\n");
+        writer.write("}).on('tap', 'node', function(){\n");
+        writer.write("  try {\n");
+        writer.write("    window.open( this.data('href') );\n");
+        writer.write("  } catch (e) {\n");
+        writer.write("    window.location.href = this.data('href');\n");
+        writer.write("  }\n");
+        writer.write("}).on('mouseover', 'node', function(){ document.getElementById('tooltip').textContent = this.data('name')+': '+this.data('summary'); });");
+        if (chunks != null) {
+            // all chunks are downloaded concurrently but added in order
+            writer.write("\nvar chunks = [");
+            for (int i = 0; i < chunks.size(); i++) {
+                writer.write((i == 0 ? "'" : ", '") + scriptString(chunks.get(i)) + "'");
+            }
+            writer.write("];\n");
+            writer.write("chunks.reduce(function (previous, chunk) {\n");
+            writer.write("  var loading = fetch(chunk).then(function (response) { return response.text(); });\n");
+            writer.write("  return previous.then(function () { return loading; }).then(function (text) {\n");
+            writer.write("    var batch = text.split('\\n').filter(function (line) { return line.length > 0; }).map(function (line) { return JSON.parse(line); });\n");
+            writer.write("    cy.batch(function () { cy.add(batch); });\n");
+            writer.write("  });\n");
+            writer.write("}, Promise.resolve()).then(function () {\n");
+            writer.write(positions == null ? "  cy.layout({ name: 'cose' }).run();\n" : "  cy.fit();\n");
+            writer.write("});\n");
+        }
+        writer.write("</script>\n");
+        writer.write("<div id='tooltip' style='color: white'></div>\n");
+        writer.write("</body>\n");
+        writer.write("</html>\n");
+        writer.flush();
+    }
 
-        private String href;
+    private void writeElements(final Writer writer, final boolean pretty) {
+        final JsonGenerator generator = Json.createGeneratorFactory(pretty ?
+                singletonMap(JsonGenerator.PRETTY_PRINTING, true) : emptyMap())
+                .createGenerator(new ScriptWriter(writer));
+        generator.writeStartObject();
+        generator.writeStartArray("nodes");
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            writeNode(generator.writeStartObject(), node);
+        }
+        generator.writeEnd();
+        generator.writeStartArray("edges");
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            for (int i = 0; i < graph.outDegree(node); i++) {
+                writeEdge(generator.writeStartObject(), node, i);
+            }
+        }
+        generator.writeEnd();
+        generator.writeEnd();
+        generator.close();
     }
 
-    @Data
-    @AllArgsConstructor
-    public static class EdgeData {
+    // ends the object started by the caller
+    private void writeNode(final JsonGenerator generator, final int node) {
+        if (positions != null) {
+            generator.writeStartObject("position")
+                    .write("x", Math.round(positions[2 * node] * 10) / 10.)
+                    .write("y", Math.round(positions[2 * node + 1] * 10) / 10.)
+                    .writeEnd();
+        }
+        generator.writeStartObject("data");
+        writeIfPresent(generator, "id", graph.id(node));
+        writeIfPresent(generator, "icon", graph.icon(node));
+        writeIfPresent(generator, "summary", graph.summary(node));
+        writeIfPresent(generator, "name", graph.key(node));
+        if (graph.key(node) != null) {
+            generator.write("href", baseUrl(graph.id(node)) + "/browse/" + graph.key(node));
+        }
+        generator.writeEnd();
+        if (nodeClasses != null) {
+            writeIfPresent(generator, "classes", nodeClasses[node]);
+        }
+        generator.writeEnd();
+    }
 
-        private String source;
+    // ends the object started by the caller
+    private void writeEdge(final JsonGenerator generator, final int source, final int i) {
+        generator.writeStartObject("data")
+                .write("source", graph.id(source))
+                .write("target", graph.id(graph.target(source, i)))
+                .write("type", graph.type(source, i).name().toLowerCase(Locale.ROOT))
+                .writeEnd();
+        if (edgeClasses != null) {
+            writeIfPresent(generator, "classes", edgeClasses[graph.edgeIndex(source, i)]);
+        }
+        generator.writeEnd();
+    }
 
-        private String target;
+    private static String[] merge(final String[] current, final String[] added) {
+        if (current == null || added == null) {
+            return current == null ? added : current;
+        }
+        final String[] merged = new String[current.length];
+        for (int i = 0; i < merged.length; i++) {
+            merged[i] = current[i] == null ? added[i] : (added[i] == null ? current[i] : current[i] + ' ' + added[i]);
+        }
+        return merged;
     }
 
-    @Data
-    @AllArgsConstructor
-    public static class Node {
+    private String baseUrl(final String id) {
+        if (instances.isEmpty() || id == null) {
+            return baseUrl;
+        }
+        final int separator = id.indexOf(Federation.SEPARATOR);
+        return separator < 0 ? baseUrl : instances.getOrDefault(id.substring(0, separator), baseUrl);
+    }
 
-        private NodeData data;
+    private static void writeLine(final JsonGeneratorFactory factory, final Writer writer,
+                                  final Consumer<JsonGenerator> element) throws IOException {
+        final JsonGenerator generator = factory.createGenerator(new FilterWriter(writer) {
+            @Override
+            public void close() {
+                // no-op, the chunk is closed by the caller
+            }
+        });
+        element.accept(generator);
+        generator.close();
+        writer.write('\n');
     }
 
-    @Data
-    @AllArgsConstructor
-    public static class Edge {
+    // escapes a value written in a single quoted javascript string of the page
+    private static String scriptString(final String value) {
+        final StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '\\' || c == '\'' || c == '"' || c == '<' || c < ' ' || c == '\u2028' || c == '\u2029') {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
 
-        private EdgeData data;
+    private static void writeIfPresent(final JsonGenerator generator, final String key, final String value) {
+        if (value != null) {
+            generator.write(key, value);
+        }
     }
 
-    @Data
-    @AllArgsConstructor
-    public static class Elements {
+    /**
+     * The elements are inlined in a {@code <script>} block, a {@code </script>} in an issue summary would end it:
+     * {@code <} is written as an unicode escape (it only appears in json strings) like the javascript line terminators.
+     * The generator closes its output when done but the page is not finished, it is only flushed.
+     */
+    private static class ScriptWriter extends FilterWriter {
 
-        private final Collection<Node> nodes = new ArrayList<>();
+        private ScriptWriter(final Writer writer) {
+            super(writer);
+        }
+
+        @Override
+        public void write(final int c) throws IOException {
+            if (isEscaped(c)) {
+                out.write(String.format("\\u%04x", c));
+            } else {
+                out.write(c);
+            }
+        }
 
-        private final Collection<Edge> edges = new ArrayList<>();
+        @Override
+        public void write(final char[] buffer, final int offset, final int length) throws IOException {
+            write(new String(buffer, offset, length), 0, length);
+        }
+
+        @Override
+        public void write(final String value, final int offset, final int length) throws IOException {
+            // writes the runs without escaped character at once, the elements are most of the page
+            int start = offset;
+            for (int i = offset; i < offset + length; i++) {
+                if (isEscaped(value.charAt(i))) {
+                    out.write(value, start, i - start);
+                    write(value.charAt(i));
+                    start = i + 1;
+                }
+            }
+            out.write(value, start, offset + length - start);
+        }
 
-        public void addNode(final NodeData node) {
-            nodes.add(new Node(node));
+        @Override
+        public void close() throws IOException {
+            flush();
         }
 
-        public void addEdge(final EdgeData edge) {
-            edges.add(new Edge(edge));
+        private static boolean isEscaped(final int c) {
+            return c == '<' || c == '\u2028' || c == '\u2029';
         }
     }
 }
@@ -0,0 +1,235 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static java.util.Arrays.asList;
+import static java.util.Optional.ofNullable;
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Expands the link graph of a set of issues breadth first: each level (frontier) is fetched
+ * with chunked {@code id in (...)} searches (see {@link Jira#planIn}) sent asynchronously,
+ * the client scheduler bounds how many are in flight.
+ * In shallow mode the last level, whose links are not expanded, is built from the issues embedded
+ * in the links of the previous one and only the incomplete ones are fetched.
+ */
+@Slf4j
+public class DependencyCrawler {
+
+    // the fields a search returns for the issues embedded in links, project is resolved from the loaded issues
+    private static final Set<String> EMBEDDED_FIELDS = new HashSet<>(asList(
+            "summary", "status", "issuetype", "priority", "project", "issuelinks"));
+
+    private final Jira jira;
+
+    private final int maxDepth;
+
+    private final int maxIssues;
+
+    private final int chunkSize;
+
+    private final boolean shallow;
+
+    public DependencyCrawler(final Jira jira, final int maxDepth, final int maxIssues, final int chunkSize) {
+        this(jira, maxDepth, maxIssues, chunkSize, false);
+    }
+
+    /**
+     * @param shallow should the last level be built from the embedded link payloads,
+     *                all the requested fields must be embedded in the links.
+     */
+    public DependencyCrawler(final Jira jira, final int maxDepth, final int maxIssues, final int chunkSize,
+                             final boolean shallow) {
+        if (shallow && !Stream.of(jira.getFields().split(",")).allMatch(EMBEDDED_FIELDS::contains)) {
+            throw new IllegalArgumentException("Shallow expansion requires fields embedded in the links "
+                    + EMBEDDED_FIELDS + ", requested: " + jira.getFields());
+        }
+        this.jira = jira;
+        this.maxDepth = maxDepth;
+        this.maxIssues = maxIssues;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.shallow = shallow;
+    }
+
+    /**
+     * @param roots the issues matching the user query.
+     * @param excludedStatuses the statuses of the dependencies to ignore.
+     * @return the roots and their (transitive) dependencies indexed by id.
+     */
+    public Map<String, Jira.JiraIssue> crawl(final Stream<Jira.JiraIssue> roots, final String[] excludedStatuses) {
+        final Map<String, Jira.JiraIssue> issues = new ConcurrentHashMap<>();
+        final Set<String> visited = ConcurrentHashMap.newKeySet();
+        roots.forEach(issue -> {
+            visited.add(issue.getId());
+            issues.put(issue.getId(), issue);
+        });
+
+        Collection<Jira.JiraIssue> level = new ArrayList<>(issues.values());
+        int depth = 0;
+        while (!level.isEmpty() && (maxDepth < 0 || depth < maxDepth)) {
+            final List<String> frontier = nextFrontier(level, visited, issues.size());
+            if (frontier.isEmpty()) {
+                break;
+            }
+            depth++;
+            log.debug("Fetching {} dependencies at depth {}", frontier.size(), depth);
+            level = shallow && depth == maxDepth ?
+                    fromLinks(level, frontier, issues, excludedStatuses) : fetch(frontier, excludedStatuses);
+            level.forEach(issue -> issues.put(issue.getId(), issue));
+        }
+        return issues;
+    }
+
+    /**
+     * Same traversal as {@link #crawl} but on already loaded issues, used to extract from a shared crawl
+     * the part reachable from a subset of its roots.
+     *
+     * @param loaded the issues available.
+     * @param roots the roots to start from.
+     * @param excludedStatuses the statuses of the dependencies to ignore.
+     * @return the roots and their (transitive) dependencies indexed by id.
+     */
+    public Map<String, Jira.JiraIssue> reachable(final Map<String, Jira.JiraIssue> loaded,
+                                                 final Collection<Jira.JiraIssue> roots, final String[] excludedStatuses) {
+        final Predicate<Jira.JiraIssue> filter = Jira.statusFilter(excludedStatuses);
+        final Map<String, Jira.JiraIssue> issues = new HashMap<>();
+        final Set<String> visited = new HashSet<>();
+        roots.forEach(issue -> {
+            visited.add(issue.getId());
+            issues.put(issue.getId(), issue);
+        });
+
+        Collection<Jira.JiraIssue> level = new ArrayList<>(issues.values());
+        int depth = 0;
+        while (!level.isEmpty() && (maxDepth < 0 || depth < maxDepth)) {
+            final List<String> frontier = nextFrontier(level, visited, issues.size());
+            if (frontier.isEmpty()) {
+                break;
+            }
+            depth++;
+            level = frontier.stream().map(loaded::get).filter(Objects::nonNull).filter(filter).collect(toList());
+            level.forEach(issue -> issues.put(issue.getId(), issue));
+        }
+        return issues;
+    }
+
+    private List<String> nextFrontier(final Collection<Jira.JiraIssue> level, final Set<String> visited,
+                                      final int loaded) {
+        final int budget = maxIssues < 0 ? Integer.MAX_VALUE : maxIssues - loaded;
+        if (budget <= 0) {
+            log.warn("Reached max issues ({}), dependencies will not be expanded further", maxIssues);
+            return new ArrayList<>();
+        }
+        final List<String> frontier = level.stream()
+                .map(Jira.JiraIssue::getFields)
+                .filter(Objects::nonNull)
+                .flatMap(fields -> ofNullable(fields.getIssuelinks()).map(Collection::stream).orElseGet(Stream::empty))
+                .flatMap(link -> Stream.of(link.getInwardIssue(), link.getOutwardIssue()))
+                .filter(Objects::nonNull)
+                .map(Jira.JiraIssue::getId)
+                .filter(visited::add)
+                .collect(toList());
+        if (frontier.size() > budget) {
+            log.warn("Reached max issues ({}), skipping {} dependencies", maxIssues, frontier.size() - budget);
+            return new ArrayList<>(frontier.subList(0, budget));
+        }
+        return frontier;
+    }
+
+    // the embedded issues only lack the project, it is shared by the issues with the same key prefix
+    private Collection<Jira.JiraIssue> fromLinks(final Collection<Jira.JiraIssue> level, final List<String> frontier,
+                                                 final Map<String, Jira.JiraIssue> loaded, final String[] excludedStatuses) {
+        final Map<String, Jira.JiraIssue> embedded = new HashMap<>();
+        level.stream()
+                .map(Jira.JiraIssue::getFields)
+                .filter(Objects::nonNull)
+                .flatMap(fields -> ofNullable(fields.getIssuelinks()).map(Collection::stream).orElseGet(Stream::empty))
+                .flatMap(link -> Stream.of(link.getInwardIssue(), link.getOutwardIssue()))
+                .filter(Objects::nonNull)
+                .forEach(issue -> embedded.putIfAbsent(issue.getId(), issue));
+        final boolean needsProject = Stream.of(jira.getFields().split(",")).anyMatch("project"::equals);
+        final Map<String, Jira.Project> projects = new HashMap<>();
+        if (needsProject) {
+            loaded.values().stream()
+                    .map(Jira.JiraIssue::getFields)
+                    .filter(it -> it != null && it.getProject() != null && it.getProject().getKey() != null)
+                    .forEach(it -> projects.putIfAbsent(it.getProject().getKey(), it.getProject()));
+        }
+
+        final Predicate<Jira.JiraIssue> filter = Jira.statusFilter(excludedStatuses);
+        final List<Jira.JiraIssue> issues = new ArrayList<>(frontier.size());
+        final List<String> missing = new ArrayList<>();
+        for (final String id : frontier) {
+            final Jira.JiraIssue payload = embedded.get(id);
+            final Jira.Project project = needsProject && payload != null && payload.getKey() != null
+                    && payload.getKey().lastIndexOf('-') > 0 ?
+                    projects.get(payload.getKey().substring(0, payload.getKey().lastIndexOf('-'))) : null;
+            if (payload == null || payload.getFields() == null || payload.getFields().getStatus() == null
+                    || (needsProject && project == null)) {
+                missing.add(id);
+                continue;
+            }
+            // embedded payloads are shared (see Interner), never mutate them
+            final Jira.Fields fields = new Jira.Fields();
+            fields.setSummary(payload.getFields().getSummary());
+            fields.setStatus(payload.getFields().getStatus());
+            fields.setIssuetype(payload.getFields().getIssuetype());
+            fields.setProject(project);
+            final Jira.JiraIssue issue = new Jira.JiraIssue();
+            issue.setId(payload.getId());
+            issue.setKey(payload.getKey());
+            issue.setSelf(payload.getSelf());
+            issue.setFields(fields);
+            if (filter.test(issue)) {
+                issues.add(issue);
+            }
+        }
+        log.debug("Built {} dependencies from links, fetching {}", frontier.size() - missing.size(), missing.size());
+        jira.getStats().count("embedded", frontier.size() - missing.size());
+        if (!missing.isEmpty()) {
+            issues.addAll(fetch(missing, excludedStatuses));
+        }
+        return issues;
+    }
+
+    /**
+     * @param ids the issues to load.
+     * @param excludedStatuses the statuses to ignore.
+     * @return the matching issues, loaded with concurrent chunked queries.
+     */
+    Collection<Jira.JiraIssue> fetch(final List<String> ids, final String[] excludedStatuses) {
+        final List<CompletableFuture<List<Jira.JiraIssue>>> chunks = new ArrayList<>();
+        for (final String jql : jira.planIn("id", ids, excludedStatuses, chunkSize)) {
+            chunks.add(jira.queryAsync(jql, excludedStatuses));
+        }
+        return chunks.stream().flatMap(it -> it.join().stream()).collect(toList());
+    }
+}
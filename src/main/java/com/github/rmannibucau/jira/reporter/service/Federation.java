@@ -0,0 +1,183 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fetches a report from several Jira instances concurrently and merges the issues in a single map,
+ * the ids of the issues of the additional instances are namespaced ({@code <instance>:<id>}) to not collide.
+ */
+@Slf4j
+public class Federation implements AutoCloseable {
+
+    public static final char SEPARATOR = ':';
+
+    private final Map<String, Member> members = new LinkedHashMap<>();
+
+    // created once, a thread per instance is started on the first fetch and reused by the next ones
+    private final ExecutorService executor = Executors.newCachedThreadPool(new NamedThreadFactory("jira-reporter-instance-"));
+
+    /**
+     * @param instance the instance.
+     * @param jira its client, it is closed with this federation.
+     * @param generator the generator using this client.
+     */
+    public void add(final JiraInstance instance, final Jira jira, final ReportGenerator generator) {
+        members.put(instance.getName(), new Member(instance, jira, generator));
+    }
+
+    /**
+     * @return the base url of each instance, indexed by namespace.
+     */
+    public Map<String, String> getBaseUrls() {
+        final Map<String, String> urls = new LinkedHashMap<>();
+        members.forEach((name, member) -> urls.put(name, member.jira.getBaseUrl()));
+        return urls;
+    }
+
+    /**
+     * @return the client of each instance, indexed by namespace.
+     */
+    public Map<String, Jira> getClients() {
+        final Map<String, Jira> clients = new LinkedHashMap<>();
+        members.forEach((name, member) -> clients.put(name, member.jira));
+        return clients;
+    }
+
+    /**
+     * @param id an issue id as returned by {@link #fetch(Supplier, String[])}.
+     * @param local the client of the main instance.
+     * @return the client of the instance owning this issue, used to load its icons for instance.
+     */
+    public Jira client(final String id, final Jira local) {
+        final int separator = id.indexOf(SEPARATOR);
+        if (separator < 0) {
+            return local;
+        }
+        final Member member = members.get(id.substring(0, separator));
+        return member == null ? local : member.jira;
+    }
+
+    /**
+     * @param local fetches the issues of the main instance, it runs in the calling thread.
+     * @param excludedStatuses the statuses to ignore.
+     * @return the issues of all instances, the slowest one bounds the duration.
+     */
+    public Map<String, Jira.JiraIssue> fetch(final Supplier<Map<String, Jira.JiraIssue>> local,
+                                             final String[] excludedStatuses) {
+        if (members.isEmpty()) {
+            return local.get();
+        }
+        final List<CompletableFuture<Map<String, Jira.JiraIssue>>> remotes = members.entrySet().stream()
+                .map(member -> CompletableFuture.supplyAsync(() -> {
+                    final ReportGenerator generator = member.getValue().generator;
+                    final Map<String, Jira.JiraIssue> issues = generator.fetch(member.getValue().instance.getJql(), excludedStatuses);
+                    generator.loadIcons(issues.values()); // warms the icon cache while the other instances are fetched
+                    log.info("Fetched {} issues from '{}'", issues.size(), member.getKey());
+                    return namespace(member.getKey(), issues.values());
+                }, executor))
+                .collect(toList());
+        final Map<String, Jira.JiraIssue> issues = new HashMap<>(local.get());
+        remotes.forEach(remote -> issues.putAll(join(remote)));
+        return issues;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        members.values().forEach(member -> member.jira.close());
+    }
+
+    // copies the issues since the embedded issues (links) are shared with other issues
+    private static Map<String, Jira.JiraIssue> namespace(final String name, final Collection<Jira.JiraIssue> issues) {
+        final Map<String, Jira.JiraIssue> namespaced = new HashMap<>(issues.size() * 4 / 3 + 1);
+        final Map<Jira.JiraIssue, Jira.JiraIssue> embedded = new HashMap<>();
+        for (final Jira.JiraIssue issue : issues) {
+            final Jira.JiraIssue copy = copy(name, issue);
+            if (issue.getFields() != null && issue.getFields().getIssuelinks() != null) {
+                final Jira.Fields fields = new Jira.Fields();
+                fields.setSummary(issue.getFields().getSummary());
+                fields.setStatus(issue.getFields().getStatus());
+                fields.setIssuetype(issue.getFields().getIssuetype());
+                fields.setProject(issue.getFields().getProject());
+                fields.setFixVersions(issue.getFields().getFixVersions());
+                final Collection<Jira.IssueLinks> links = new ArrayList<>(issue.getFields().getIssuelinks().size());
+                for (final Jira.IssueLinks link : issue.getFields().getIssuelinks()) {
+                    final Jira.IssueLinks linkCopy = new Jira.IssueLinks();
+                    linkCopy.setId(link.getId());
+                    linkCopy.setType(link.getType());
+                    if (link.getInwardIssue() != null) {
+                        linkCopy.setInwardIssue(embedded.computeIfAbsent(link.getInwardIssue(), it -> copy(name, it)));
+                    }
+                    if (link.getOutwardIssue() != null) {
+                        linkCopy.setOutwardIssue(embedded.computeIfAbsent(link.getOutwardIssue(), it -> copy(name, it)));
+                    }
+                    links.add(linkCopy);
+                }
+                fields.setIssuelinks(links);
+                copy.setFields(fields);
+            }
+            namespaced.put(copy.getId(), copy);
+        }
+        return namespaced;
+    }
+
+    private static Jira.JiraIssue copy(final String name, final Jira.JiraIssue issue) {
+        final Jira.JiraIssue copy = new Jira.JiraIssue();
+        copy.setId(name + SEPARATOR + issue.getId());
+        copy.setKey(issue.getKey());
+        copy.setSelf(issue.getSelf());
+        copy.setFields(issue.getFields());
+        return copy;
+    }
+
+    private static <T> T join(final CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class Member {
+
+        private final JiraInstance instance;
+
+        private final Jira jira;
+
+        private final ReportGenerator generator;
+    }
+}
@@ -0,0 +1,307 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Fruchterman-Reingold force directed layout where the repulsion is approximated with a Barnes-Hut quadtree.
+ * The repulsion of each iteration is computed with fork/join tasks over the quadtree cells, each body being
+ * only written by the task owning its cell, so the result only depends on the seed and not on the scheduling.
+ */
+@RequiredArgsConstructor
+public class ForceLayout {
+
+    // ideal distance between two linked nodes, in pixels
+    private static final double DISTANCE = 80;
+
+    private static final double THETA = 0.8;
+
+    private static final double GRAVITY = 1;
+
+    // bodies of a cell computed in a single task
+    private static final int TASK_SIZE = 256;
+
+    private static final int MAX_DEPTH = 32;
+
+    private final int iterations;
+
+    private final long seed;
+
+    /**
+     * @param graph the graph to layout.
+     * @return the node positions, {@code x} at {@code 2 * node} and {@code y} at {@code 2 * node + 1}.
+     */
+    public double[] layout(final IssueGraph graph) {
+        final double[] positions = new double[graph.nodeCount() * 2];
+        final double radius = DISTANCE * Math.sqrt(graph.nodeCount());
+        final Random random = new Random(seed);
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = (random.nextDouble() - .5) * radius;
+        }
+        return layout(graph, positions);
+    }
+
+    /**
+     * @param positions the initial positions, updated in place.
+     */
+    double[] layout(final IssueGraph graph, final double[] positions) {
+        final int nodes = graph.nodeCount();
+        if (nodes < 2) {
+            return positions;
+        }
+        final double radius = DISTANCE * Math.sqrt(nodes);
+
+        final double[] displacements = new double[positions.length];
+        final int[] bodies = new int[nodes];
+        final ForkJoinPool pool = ForkJoinPool.commonPool();
+        double temperature = radius / 10;
+        final double cooling = temperature / (iterations + 1);
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            Arrays.fill(displacements, 0);
+            for (int i = 0; i < nodes; i++) {
+                bodies[i] = i;
+            }
+            final QuadTree tree = new QuadTree(positions, bodies);
+            pool.invoke(new Repulsion(tree, 0, displacements));
+            attract(graph, positions, displacements);
+            move(positions, displacements, temperature);
+            temperature -= cooling;
+        }
+        return positions;
+    }
+
+    private static void attract(final IssueGraph graph, final double[] positions, final double[] displacements) {
+        graph.forEachEdge((source, target, type) -> {
+            final double dx = positions[2 * source] - positions[2 * target];
+            final double dy = positions[2 * source + 1] - positions[2 * target + 1];
+            final double distance = Math.max(.01, Math.sqrt(dx * dx + dy * dy));
+            final double force = distance / DISTANCE; // d^2 / k normalized by d
+            displacements[2 * source] -= dx * force;
+            displacements[2 * source + 1] -= dy * force;
+            displacements[2 * target] += dx * force;
+            displacements[2 * target + 1] += dy * force;
+        });
+    }
+
+    private static void move(final double[] positions, final double[] displacements, final double temperature) {
+        for (int i = 0; i < positions.length; i += 2) {
+            // keep the disconnected components close to the center
+            final double dx = displacements[i] - positions[i] * GRAVITY;
+            final double dy = displacements[i + 1] - positions[i + 1] * GRAVITY;
+            final double length = Math.sqrt(dx * dx + dy * dy);
+            if (length > 0) {
+                final double step = Math.min(length, temperature) / length;
+                positions[i] += dx * step;
+                positions[i + 1] += dy * step;
+            }
+        }
+    }
+
+    /**
+     * Computes the repulsion of the bodies of a cell, forking a task per child cell while the cell is big.
+     */
+    @RequiredArgsConstructor
+    private static class Repulsion extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final QuadTree tree;
+
+        private final int cell;
+
+        private final double[] displacements;
+
+        @Override
+        protected void compute() {
+            if (tree.to[cell] - tree.from[cell] <= TASK_SIZE || tree.isLeaf(cell)) {
+                for (int i = tree.from[cell]; i < tree.to[cell]; i++) {
+                    tree.repulse(tree.bodies[i], displacements);
+                }
+                return;
+            }
+            final Repulsion[] children = new Repulsion[4];
+            int count = 0;
+            for (int q = 0; q < 4; q++) {
+                final int child = tree.children[cell * 4 + q];
+                if (child >= 0) {
+                    children[count++] = new Repulsion(tree, child, displacements);
+                }
+            }
+            invokeAll(Arrays.copyOf(children, count));
+        }
+    }
+
+    /**
+     * Array based quadtree, each cell owns the contiguous range {@code bodies[from, to[}.
+     */
+    private static class QuadTree {
+
+        private final double[] positions;
+
+        private final int[] bodies;
+
+        private int[] from = new int[64];
+
+        private int[] to = new int[64];
+
+        private int[] children = new int[256];
+
+        private double[] size = new double[64];
+
+        private double[] centerX = new double[64];
+
+        private double[] centerY = new double[64];
+
+        private int cells;
+
+        private QuadTree(final double[] positions, final int[] bodies) {
+            this.positions = positions;
+            this.bodies = bodies;
+            double minX = Double.MAX_VALUE;
+            double minY = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE;
+            double maxY = -Double.MAX_VALUE;
+            for (int i = 0; i < positions.length; i += 2) {
+                minX = Math.min(minX, positions[i]);
+                maxX = Math.max(maxX, positions[i]);
+                minY = Math.min(minY, positions[i + 1]);
+                maxY = Math.max(maxY, positions[i + 1]);
+            }
+            build(0, bodies.length, minX, minY, Math.max(maxX - minX, maxY - minY) + 1e-6, 0);
+        }
+
+        private boolean isLeaf(final int cell) {
+            return children[cell * 4] < 0 && children[cell * 4 + 1] < 0
+                    && children[cell * 4 + 2] < 0 && children[cell * 4 + 3] < 0;
+        }
+
+        private int build(final int start, final int end, final double x, final double y, final double width,
+                          final int depth) {
+            final int cell = allocate();
+            from[cell] = start;
+            to[cell] = end;
+            size[cell] = width;
+            double sumX = 0;
+            double sumY = 0;
+            for (int i = start; i < end; i++) {
+                sumX += positions[2 * bodies[i]];
+                sumY += positions[2 * bodies[i] + 1];
+            }
+            centerX[cell] = sumX / (end - start);
+            centerY[cell] = sumY / (end - start);
+            if (end - start == 1 || depth == MAX_DEPTH) {
+                return cell;
+            }
+
+            // partition the bodies per quadrant: [left-bottom, right-bottom, left-top, right-top]
+            final double half = width / 2;
+            final double midX = x + half;
+            final double midY = y + half;
+            final int splitY = partition(start, end, 1, midY);
+            final int splitLow = partition(start, splitY, 0, midX);
+            final int splitHigh = partition(splitY, end, 0, midX);
+            final int[] bounds = {start, splitLow, splitY, splitHigh, end};
+            for (int q = 0; q < 4; q++) {
+                final int child = bounds[q] == bounds[q + 1] ? -1 : build(bounds[q], bounds[q + 1],
+                        (q & 1) == 0 ? x : midX, (q & 2) == 0 ? y : midY, half, depth + 1);
+                children[cell * 4 + q] = child;
+            }
+            return cell;
+        }
+
+        // moves the bodies with coordinate < pivot first and returns the first index of the others
+        private int partition(final int start, final int end, final int axis, final double pivot) {
+            int low = start;
+            int high = end - 1;
+            while (low <= high) {
+                if (positions[2 * bodies[low] + axis] < pivot) {
+                    low++;
+                } else {
+                    final int tmp = bodies[low];
+                    bodies[low] = bodies[high];
+                    bodies[high--] = tmp;
+                }
+            }
+            return low;
+        }
+
+        private int allocate() {
+            if (cells == from.length) {
+                final int length = cells * 2;
+                from = Arrays.copyOf(from, length);
+                to = Arrays.copyOf(to, length);
+                size = Arrays.copyOf(size, length);
+                centerX = Arrays.copyOf(centerX, length);
+                centerY = Arrays.copyOf(centerY, length);
+                children = Arrays.copyOf(children, length * 4);
+            }
+            Arrays.fill(children, cells * 4, cells * 4 + 4, -1);
+            return cells++;
+        }
+
+        private void repulse(final int body, final double[] displacements) {
+            final double x = positions[2 * body];
+            final double y = positions[2 * body + 1];
+            final int[] stack = new int[MAX_DEPTH * 4 + 4];
+            int top = 0;
+            stack[top++] = 0;
+            double fx = 0;
+            double fy = 0;
+            while (top > 0) {
+                final int cell = stack[--top];
+                final double dx = x - centerX[cell];
+                final double dy = y - centerY[cell];
+                final double distance2 = dx * dx + dy * dy;
+                if (isLeaf(cell)) {
+                    for (int i = from[cell]; i < to[cell]; i++) {
+                        final int other = bodies[i];
+                        if (other != body) {
+                            final double ox = x - positions[2 * other];
+                            final double oy = y - positions[2 * other + 1];
+                            final double force = repulsion(ox * ox + oy * oy);
+                            fx += ox * force;
+                            fy += oy * force;
+                        }
+                    }
+                } else if (size[cell] * size[cell] < THETA * THETA * distance2) { // far enough to be a single body
+                    final double force = repulsion(distance2) * (to[cell] - from[cell]);
+                    fx += dx * force;
+                    fy += dy * force;
+                } else {
+                    for (int q = 0; q < 4; q++) {
+                        final int child = children[cell * 4 + q];
+                        if (child >= 0) {
+                            stack[top++] = child;
+                        }
+                    }
+                }
+            }
+            displacements[2 * body] += fx;
+            displacements[2 * body + 1] += fy;
+        }
+
+        // k^2 / d normalized by d to be applied on the (dx, dy) vector
+        private static double repulsion(final double distance2) {
+            return DISTANCE * DISTANCE / Math.max(distance2, .01);
+        }
+    }
+}
@@ -0,0 +1,416 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+
+import lombok.Value;
+
+/**
+ * Analyzes the "blocks" links of a graph (a link {@code a -> b} meaning {@code a} blocks {@code b}):
+ * <ul>
+ *     <li>cycles: strongly connected components (Tarjan),</li>
+ *     <li>critical path of each fix version: longest blocking chain between the issues of the version,
+ *     cycles being collapsed,</li>
+ *     <li>blockers: number of issues each issue transitively blocks, computed on the component DAG with
+ *     64 sources per pass (one bit each) and the passes run in parallel.</li>
+ * </ul>
+ * Everything is linear in the graph size except the blockers, linear per group of 64 blocking components.
+ */
+public final class GraphAnalytics {
+
+    // the fields the analysis reads, critical paths are computed per fix version
+    public static final String FIELDS = "fixVersions";
+
+    private static final int TOP_BLOCKERS = 20;
+
+    private GraphAnalytics() {
+        // no-op
+    }
+
+    public static Result analyze(final IssueGraph graph) {
+        final int nodes = graph.nodeCount();
+        final int[] component = new int[nodes];
+        final int components = tarjan(graph, component);
+
+        // nodes grouped per component, components are numbered in reverse topological order (sinks first)
+        final int[] componentStart = new int[components + 1];
+        for (int node = 0; node < nodes; node++) {
+            componentStart[component[node] + 1]++;
+        }
+        for (int c = 0; c < components; c++) {
+            componentStart[c + 1] += componentStart[c];
+        }
+        final int[] componentNodes = new int[nodes];
+        final int[] fill = Arrays.copyOf(componentStart, components);
+        for (int node = 0; node < nodes; node++) {
+            componentNodes[fill[component[node]]++] = node;
+        }
+
+        final boolean[] cyclic = new boolean[components];
+        for (int c = 0; c < components; c++) {
+            cyclic[c] = componentStart[c + 1] - componentStart[c] > 1;
+        }
+        for (int node = 0; node < nodes; node++) {
+            for (int i = 0; i < graph.outDegree(node); i++) {
+                if (graph.target(node, i) == node && isBlocking(graph, node, i)) {
+                    cyclic[component[node]] = true;
+                }
+            }
+        }
+        final List<int[]> cycles = new ArrayList<>();
+        for (int c = 0; c < components; c++) {
+            if (cyclic[c]) {
+                cycles.add(Arrays.copyOfRange(componentNodes, componentStart[c], componentStart[c + 1]));
+            }
+        }
+        cycles.sort((a, b) -> b.length - a.length);
+
+        final List<CriticalPath> paths = criticalPaths(graph, component, components, componentStart, componentNodes);
+        final int[] blocked = blocked(graph, component, components, componentStart, componentNodes);
+
+        final String[] nodeClasses = new String[nodes];
+        final String[] edgeClasses = new String[graph.edgeCount()];
+        for (int node = 0; node < nodes; node++) {
+            if (cyclic[component[node]]) {
+                nodeClasses[node] = "cycle";
+                for (int i = 0; i < graph.outDegree(node); i++) {
+                    if (component[graph.target(node, i)] == component[node] && isBlocking(graph, node, i)) {
+                        edgeClasses[graph.edgeIndex(node, i)] = "cycle";
+                    }
+                }
+            }
+        }
+        for (final CriticalPath path : paths) {
+            if (path.getNodes().length < 2) {
+                continue;
+            }
+            for (int i = 0; i < path.getNodes().length; i++) {
+                addClass(nodeClasses, path.getNodes()[i], "critical");
+                if (i > 0) {
+                    addClass(edgeClasses, graph.findEdge(path.getNodes()[i - 1], path.getNodes()[i]), "critical");
+                }
+            }
+        }
+        final int[] blockers = IntStream.range(0, nodes)
+                .filter(node -> blocked[node] > 0)
+                .boxed()
+                .sorted((a, b) -> blocked[b] - blocked[a])
+                .limit(TOP_BLOCKERS)
+                .mapToInt(Integer::intValue)
+                .toArray();
+        for (final int node : blockers) {
+            addClass(nodeClasses, node, "blocker");
+        }
+        return new Result(graph, cycles, paths, blocked, blockers, nodeClasses, edgeClasses);
+    }
+
+    // iterative Tarjan on the blocking links, returns the number of components
+    private static int tarjan(final IssueGraph graph, final int[] component) {
+        final int nodes = graph.nodeCount();
+        final int[] index = new int[nodes];
+        final int[] low = new int[nodes];
+        final boolean[] onStack = new boolean[nodes];
+        final int[] stack = new int[nodes];
+        final int[] callNodes = new int[nodes];
+        final int[] callEdges = new int[nodes];
+        Arrays.fill(index, -1);
+        int counter = 0;
+        int components = 0;
+        int top = 0;
+        for (int root = 0; root < nodes; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            callNodes[depth] = root;
+            callEdges[depth++] = 0;
+            index[root] = low[root] = counter++;
+            stack[top++] = root;
+            onStack[root] = true;
+            while (depth > 0) {
+                final int node = callNodes[depth - 1];
+                final int edge = callEdges[depth - 1];
+                if (edge < graph.outDegree(node)) {
+                    callEdges[depth - 1]++;
+                    if (!isBlocking(graph, node, edge)) {
+                        continue;
+                    }
+                    final int target = graph.target(node, edge);
+                    if (index[target] < 0) {
+                        index[target] = low[target] = counter++;
+                        stack[top++] = target;
+                        onStack[target] = true;
+                        callNodes[depth] = target;
+                        callEdges[depth++] = 0;
+                    } else if (onStack[target]) {
+                        low[node] = Math.min(low[node], index[target]);
+                    }
+                    continue;
+                }
+                if (low[node] == index[node]) {
+                    int member;
+                    do {
+                        member = stack[--top];
+                        onStack[member] = false;
+                        component[member] = components;
+                    } while (member != node);
+                    components++;
+                }
+                if (--depth > 0) {
+                    final int parent = callNodes[depth - 1];
+                    low[parent] = Math.min(low[parent], low[node]);
+                }
+            }
+        }
+        return components;
+    }
+
+    private static List<CriticalPath> criticalPaths(final IssueGraph graph, final int[] component, final int components,
+                                                    final int[] componentStart, final int[] componentNodes) {
+        // nodes of each version in topological order (sources first)
+        final Map<String, List<Integer>> versions = new LinkedHashMap<>();
+        for (int c = components - 1; c >= 0; c--) {
+            for (int n = componentStart[c]; n < componentStart[c + 1]; n++) {
+                final int node = componentNodes[n];
+                final String names = graph.fixVersions(node);
+                if (names == null) {
+                    continue;
+                }
+                for (final String version : names.split(",")) {
+                    versions.computeIfAbsent(version, k -> new ArrayList<>()).add(node);
+                }
+            }
+        }
+
+        final int nodes = graph.nodeCount();
+        final int[] member = new int[nodes];
+        final int[] length = new int[nodes];
+        final int[] previous = new int[nodes];
+        Arrays.fill(member, -1);
+        final List<CriticalPath> paths = new ArrayList<>(versions.size());
+        int version = 0;
+        for (final Map.Entry<String, List<Integer>> entry : versions.entrySet()) {
+            for (final int node : entry.getValue()) {
+                member[node] = version;
+                length[node] = 1;
+                previous[node] = -1;
+            }
+            int end = entry.getValue().get(0);
+            for (final int node : entry.getValue()) {
+                for (int i = 0; i < graph.outDegree(node); i++) {
+                    final int target = graph.target(node, i);
+                    if (member[target] == version && component[target] != component[node] && isBlocking(graph, node, i)
+                            && length[node] + 1 > length[target]) {
+                        length[target] = length[node] + 1;
+                        previous[target] = node;
+                    }
+                }
+                if (length[node] > length[end]) {
+                    end = node;
+                }
+            }
+            final int[] path = new int[length[end]];
+            for (int node = end, i = path.length - 1; node >= 0; node = previous[node], i--) {
+                path[i] = node;
+            }
+            paths.add(new CriticalPath(entry.getKey(), path));
+            version++;
+        }
+        paths.sort((a, b) -> b.getNodes().length - a.getNodes().length);
+        return paths;
+    }
+
+    // number of issues each issue transitively blocks, the issues of a cycle all block each other
+    private static int[] blocked(final IssueGraph graph, final int[] component, final int components,
+                                 final int[] componentStart, final int[] componentNodes) {
+        // component DAG as CSR, a component without successor doesn't block anything outside of itself
+        final int[] offsets = new int[components + 1];
+        for (int c = 0; c < components; c++) {
+            offsets[c + 1] = offsets[c];
+            for (int n = componentStart[c]; n < componentStart[c + 1]; n++) {
+                final int node = componentNodes[n];
+                for (int i = 0; i < graph.outDegree(node); i++) {
+                    if (component[graph.target(node, i)] != c && isBlocking(graph, node, i)) {
+                        offsets[c + 1]++;
+                    }
+                }
+            }
+        }
+        final int[] targets = new int[offsets[components]];
+        for (int c = 0, e = 0; c < components; c++) {
+            for (int n = componentStart[c]; n < componentStart[c + 1]; n++) {
+                final int node = componentNodes[n];
+                for (int i = 0; i < graph.outDegree(node); i++) {
+                    final int target = component[graph.target(node, i)];
+                    if (target != c && isBlocking(graph, node, i)) {
+                        targets[e++] = target;
+                    }
+                }
+            }
+        }
+        final int[] sizes = new int[components];
+        for (int c = 0; c < components; c++) {
+            sizes[c] = componentStart[c + 1] - componentStart[c];
+        }
+        final int[] sources = IntStream.range(0, components).filter(c -> offsets[c + 1] > offsets[c]).toArray();
+
+        final int[] reached = Arrays.copyOf(sizes, components);
+        IntStream.range(0, (sources.length + Long.SIZE - 1) / Long.SIZE).parallel().forEach(batch -> {
+            final int first = batch * Long.SIZE;
+            final int last = Math.min(sources.length, first + Long.SIZE);
+            final long[] reach = new long[components];
+            for (int s = first; s < last; s++) {
+                reach[sources[s]] |= 1L << (s - first);
+            }
+            // bit sliced counters: bit i of planes[p] is the bit p of the count of the source i
+            final long[] planes = new long[Integer.SIZE];
+            // sources are sorted, nothing before the last one in topological order can be reached
+            for (int c = sources[last - 1]; c >= 0; c--) {
+                final long bits = reach[c];
+                if (bits == 0) {
+                    continue;
+                }
+                for (int e = offsets[c]; e < offsets[c + 1]; e++) {
+                    reach[targets[e]] |= bits;
+                }
+                final int size = sizes[c];
+                for (int plane = 0; (size >>> plane) != 0; plane++) {
+                    if (((size >>> plane) & 1) != 0) {
+                        long carry = bits;
+                        for (int p = plane; carry != 0; p++) {
+                            final long next = planes[p] & carry;
+                            planes[p] ^= carry;
+                            carry = next;
+                        }
+                    }
+                }
+            }
+            for (int s = first; s < last; s++) { // each batch owns its sources
+                int count = 0;
+                for (int p = 0; p < planes.length; p++) {
+                    count |= (int) ((planes[p] >>> (s - first)) & 1) << p;
+                }
+                reached[sources[s]] = count;
+            }
+        });
+        final int[] blocked = new int[graph.nodeCount()];
+        for (int node = 0; node < blocked.length; node++) {
+            blocked[node] = reached[component[node]] - 1;
+        }
+        return blocked;
+    }
+
+    private static boolean isBlocking(final IssueGraph graph, final int node, final int i) {
+        return graph.type(node, i) == IssueGraph.LinkType.BLOCKS;
+    }
+
+    private static void addClass(final String[] classes, final int index, final String name) {
+        classes[index] = classes[index] == null ? name : classes[index] + ' ' + name;
+    }
+
+    @Value
+    public static class CriticalPath {
+
+        private final String fixVersion;
+
+        // from the first blocker to the last blocked issue
+        private final int[] nodes;
+    }
+
+    @Value
+    public static class Result {
+
+        private final IssueGraph graph;
+
+        // biggest first
+        private final List<int[]> cycles;
+
+        // longest first
+        private final List<CriticalPath> criticalPaths;
+
+        // per node, the number of issues it transitively blocks
+        private final int[] blocked;
+
+        // the nodes blocking the most issues, most blocking first
+        private final int[] blockers;
+
+        private final String[] nodeClasses;
+
+        private final String[] edgeClasses;
+
+        /**
+         * Writes the analysis as JSON, issues are referenced by key.
+         */
+        public void writeJson(final Writer writer, final boolean pretty) {
+            final JsonGenerator generator = Json.createGeneratorFactory(pretty ?
+                    singletonMap(JsonGenerator.PRETTY_PRINTING, true) : emptyMap()).createGenerator(writer);
+            generator.writeStartObject();
+            generator.write("issues", graph.nodeCount());
+            generator.write("links", graph.edgeCount());
+            generator.writeStartArray("cycles");
+            for (final int[] cycle : cycles) {
+                generator.writeStartObject().write("size", cycle.length);
+                writeKeys(generator, cycle);
+                generator.writeEnd();
+            }
+            generator.writeEnd();
+            generator.writeStartArray("criticalPaths");
+            for (final CriticalPath path : criticalPaths) {
+                generator.writeStartObject()
+                        .write("fixVersion", path.getFixVersion())
+                        .write("length", path.getNodes().length);
+                writeKeys(generator, path.getNodes());
+                generator.writeEnd();
+            }
+            generator.writeEnd();
+            generator.writeStartArray("blockers");
+            for (final int node : blockers) {
+                generator.writeStartObject()
+                        .write("issue", key(node))
+                        .write("blocks", blocked[node])
+                        .writeEnd();
+            }
+            generator.writeEnd();
+            generator.writeEnd();
+            generator.close();
+        }
+
+        private void writeKeys(final JsonGenerator generator, final int[] nodes) {
+            generator.writeStartArray("issues");
+            for (final int node : nodes) {
+                generator.write(key(node));
+            }
+            generator.writeEnd();
+        }
+
+        private String key(final int node) {
+            return graph.key(node) != null ? graph.key(node) : graph.id(node);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.Value;
+
+/**
+ * Compares two report graphs in linear time: nodes are matched by id and compared with a hash of
+ * their key, summary, status and fix versions, links are matched with a hash of their ends ids.
+ */
+public final class GraphDiff {
+
+    private GraphDiff() {
+        // no-op
+    }
+
+    /**
+     * @param previous the graph of a previous run (see {@link GraphSnapshot}).
+     * @param current the graph of this run.
+     * @param deltaOnly should only the differences (and the ends of the changed links) be kept.
+     * @return the current graph with the removed nodes and links added back and the state of each element.
+     */
+    public static Result diff(final IssueGraph previous, final IssueGraph current, final boolean deltaOnly) {
+        final Map<String, Long> previousNodes = new HashMap<>(capacity(previous.nodeCount()));
+        for (int node = 0; node < previous.nodeCount(); node++) {
+            previousNodes.put(previous.id(node), nodeHash(previous, node));
+        }
+        final Map<Long, IssueGraph.LinkType> previousEdges = new HashMap<>(capacity(previous.edgeCount()));
+        previous.forEachEdge((source, target, type) -> previousEdges.put(edgeHash(previous, source, target), type));
+
+        final Map<String, State> nodeStates = new HashMap<>();
+        final Map<Long, State> edgeStates = new HashMap<>();
+        final IssueGraph.Builder builder = IssueGraph.builder();
+        for (int node = 0; node < current.nodeCount(); node++) {
+            builder.addNode(current.id(node), current.key(node), current.summary(node), current.icon(node),
+                    current.status(node), current.fixVersions(node));
+            final Long hash = previousNodes.remove(current.id(node));
+            if (hash == null) {
+                nodeStates.put(current.id(node), State.ADDED);
+            } else if (hash != nodeHash(current, node)) {
+                nodeStates.put(current.id(node), State.CHANGED);
+            }
+        }
+        current.forEachEdge((source, target, type) -> {
+            builder.addEdge(source, target, type);
+            final long hash = edgeHash(current, source, target);
+            final IssueGraph.LinkType old = previousEdges.remove(hash);
+            if (old == null) {
+                edgeStates.put(hash, State.ADDED);
+            } else if (old != type) {
+                edgeStates.put(hash, State.CHANGED);
+            }
+        });
+        // what is left in the previous indices was removed
+        for (int node = 0; node < previous.nodeCount(); node++) {
+            if (previousNodes.containsKey(previous.id(node))) {
+                builder.addNode(previous.id(node), previous.key(node), previous.summary(node), null,
+                        previous.status(node), previous.fixVersions(node));
+                nodeStates.put(previous.id(node), State.REMOVED);
+            }
+        }
+        previous.forEachEdge((source, target, type) -> {
+            final long hash = edgeHash(previous, source, target);
+            if (previousEdges.containsKey(hash)) {
+                builder.addEdge(previous.id(source), previous.id(target), type);
+                edgeStates.put(hash, State.REMOVED);
+            }
+        });
+
+        IssueGraph merged = builder.build();
+        if (deltaOnly) {
+            final boolean[] keep = new boolean[merged.nodeCount()];
+            for (int node = 0; node < merged.nodeCount(); node++) {
+                keep[node] |= nodeStates.containsKey(merged.id(node));
+                for (int i = 0; i < merged.outDegree(node); i++) {
+                    if (edgeStates.containsKey(edgeHash(merged, node, merged.target(node, i)))) {
+                        keep[node] = true;
+                        keep[merged.target(node, i)] = true;
+                    }
+                }
+            }
+            int count = 0;
+            final int[] nodes = new int[merged.nodeCount()];
+            for (int node = 0; node < keep.length; node++) {
+                if (keep[node]) {
+                    nodes[count++] = node;
+                }
+            }
+            merged = merged.subgraph(Arrays.copyOf(nodes, count));
+        }
+        return classify(merged, nodeStates, edgeStates);
+    }
+
+    private static Result classify(final IssueGraph graph, final Map<String, State> nodeStates,
+                                   final Map<Long, State> edgeStates) {
+        final State[] nodes = new State[graph.nodeCount()];
+        final State[] edges = new State[graph.edgeCount()];
+        final int[] counts = new int[State.values().length * 2];
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            nodes[node] = nodeStates.get(graph.id(node));
+            if (nodes[node] != null) {
+                counts[nodes[node].ordinal()]++;
+            }
+            for (int i = 0; i < graph.outDegree(node); i++) {
+                final int edge = graph.edgeIndex(node, i);
+                edges[edge] = edgeStates.get(edgeHash(graph, node, graph.target(node, i)));
+                if (edges[edge] != null) {
+                    counts[State.values().length + edges[edge].ordinal()]++;
+                }
+            }
+        }
+        return new Result(graph, nodes, edges, counts);
+    }
+
+    private static long nodeHash(final IssueGraph graph, final int node) {
+        return Hashes.hash64(graph.key(node), graph.summary(node), graph.status(node), graph.fixVersions(node));
+    }
+
+    private static long edgeHash(final IssueGraph graph, final int source, final int target) {
+        return Hashes.hash64(graph.id(source), graph.id(target));
+    }
+
+    private static int capacity(final int size) {
+        return (int) (size / .75f) + 1;
+    }
+
+    public enum State {
+        ADDED, CHANGED, REMOVED
+    }
+
+    @Value
+    public static class Result {
+
+        private final IssueGraph graph;
+
+        // state of each node, null if unchanged
+        private final State[] nodes;
+
+        // state of each link (see IssueGraph#edgeIndex), null if unchanged
+        private final State[] edges;
+
+        private final int[] counts;
+
+        public int nodes(final State state) {
+            return counts[state.ordinal()];
+        }
+
+        public int edges(final State state) {
+            return counts[State.values().length + state.ordinal()];
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import lombok.Value;
+
+/**
+ * Splits a graph in independent parts using the connected components of the links (union-find).
+ */
+public final class GraphPartitioner {
+
+    // partition of the issues without any link in the graph
+    public static final String UNLINKED = "unlinked";
+
+    // partition of the issues whose key has no project prefix, project keys never contain a dash
+    public static final String NO_PROJECT = "no-project";
+
+    private GraphPartitioner() {
+        // no-op
+    }
+
+    /**
+     * @param graph the graph to split.
+     * @param mode how to group the components.
+     * @return the partitions, biggest first for {@link Mode#COMPONENT}, by project key for {@link Mode#PROJECT}.
+     */
+    public static List<Partition> partition(final IssueGraph graph, final Mode mode) {
+        final List<int[]> components = components(graph);
+        switch (mode) {
+            case COMPONENT:
+                final List<Partition> partitions = new ArrayList<>();
+                final List<int[]> unlinked = new ArrayList<>();
+                for (final int[] component : components) {
+                    if (component.length == 1) {
+                        unlinked.add(component);
+                    } else {
+                        partitions.add(new Partition("component-" + (partitions.size() + 1), component));
+                    }
+                }
+                if (!unlinked.isEmpty()) {
+                    partitions.add(new Partition(UNLINKED, merge(unlinked)));
+                }
+                return partitions;
+            case PROJECT:
+                // a component belongs to the project most of its issues belong to
+                final Map<String, List<int[]>> byProject = new TreeMap<>();
+                for (final int[] component : components) {
+                    byProject.computeIfAbsent(mainProject(graph, component), k -> new ArrayList<>()).add(component);
+                }
+                return byProject.entrySet().stream()
+                        .map(e -> new Partition(e.getKey().isEmpty() ? NO_PROJECT : e.getKey(), merge(e.getValue())))
+                        .collect(toList());
+            default:
+                throw new IllegalArgumentException("Unsupported mode: " + mode);
+        }
+    }
+
+    /**
+     * Partition names come from the data (project keys) so they are not usable as file names as is.
+     *
+     * @param names the partition names.
+     * @return a portable and unique (ignoring the case) html file name per partition name, {@code index.html} is never used.
+     */
+    public static Map<String, String> fileNames(final Collection<String> names) {
+        final Set<String> used = new HashSet<>();
+        used.add("index");
+        final Map<String, String> files = new HashMap<>();
+        for (final String name : names) {
+            final String sanitized = name.replaceAll("[^A-Za-z0-9_-]", "_"); // no dot so never a relative path
+            final String base = sanitized.isEmpty() ? "partition" : sanitized;
+            String file = base;
+            for (int i = 2; !used.add(file.toLowerCase(Locale.ROOT)); i++) {
+                file = base + '-' + i;
+            }
+            files.put(name, file + ".html");
+        }
+        return files;
+    }
+
+    /**
+     * @return the connected components (links are considered undirected), biggest first.
+     */
+    public static List<int[]> components(final IssueGraph graph) {
+        final int nodes = graph.nodeCount();
+        final int[] parents = new int[nodes];
+        final int[] sizes = new int[nodes];
+        for (int i = 0; i < nodes; i++) {
+            parents[i] = i;
+            sizes[i] = 1;
+        }
+        graph.forEachEdge((source, target, type) -> {
+            int a = find(parents, source);
+            int b = find(parents, target);
+            if (a == b) {
+                return;
+            }
+            if (sizes[a] < sizes[b]) { // union by size keeps the trees flat
+                final int tmp = a;
+                a = b;
+                b = tmp;
+            }
+            parents[b] = a;
+            sizes[a] += sizes[b];
+        });
+
+        final int[] componentOfRoot = new int[nodes];
+        Arrays.fill(componentOfRoot, -1);
+        final List<int[]> components = new ArrayList<>();
+        final int[] filled = new int[nodes];
+        final int[] componentOfNode = new int[nodes];
+        for (int i = 0; i < nodes; i++) {
+            final int root = find(parents, i);
+            if (componentOfRoot[root] < 0) {
+                componentOfRoot[root] = components.size();
+                components.add(new int[sizes[root]]);
+            }
+            componentOfNode[i] = componentOfRoot[root];
+        }
+        for (int i = 0; i < nodes; i++) {
+            final int component = componentOfNode[i];
+            components.get(component)[filled[component]++] = i;
+        }
+        // stable sort: equal sizes stay in node order so the result is deterministic
+        components.sort(comparing((int[] c) -> c.length).reversed());
+        return components;
+    }
+
+    private static int find(final int[] parents, final int node) {
+        int current = node;
+        while (parents[current] != current) {
+            parents[current] = parents[parents[current]]; // path halving
+            current = parents[current];
+        }
+        return current;
+    }
+
+    private static String mainProject(final IssueGraph graph, final int[] component) {
+        if (component.length == 1) {
+            return graph.project(component[0]);
+        }
+        final Map<String, Integer> counts = new HashMap<>();
+        String best = "";
+        int bestCount = 0;
+        for (final int node : component) {
+            final String project = graph.project(node);
+            final int count = counts.merge(project, 1, Integer::sum);
+            if (count > bestCount || (count == bestCount && project.compareTo(best) < 0)) {
+                best = project;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    private static int[] merge(final List<int[]> components) {
+        return components.stream().flatMapToInt(Arrays::stream).toArray();
+    }
+
+    public enum Mode {
+        COMPONENT, PROJECT
+    }
+
+    @Value
+    public static class Partition {
+
+        private final String name;
+
+        private final int[] nodes;
+    }
+}
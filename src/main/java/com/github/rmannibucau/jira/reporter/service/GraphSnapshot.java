@@ -0,0 +1,150 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * Compact binary (gzipped) form of a report graph: the node attributes followed by the links
+ * as node indices, it is what a later run compares to (see {@link GraphDiff}).
+ * Icons are not kept, they don't participate to the comparison.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class GraphSnapshot {
+
+    // the fields a snapshot records and a diff compares
+    public static final String FIELDS = "summary,status,fixVersions";
+
+    private static final int MAGIC = 0x4a525331; // JRS1
+
+    private static final int VERSION = 1;
+
+    // no summary gets close, a bigger length means the file is corrupted
+    private static final int MAX_STRING_LENGTH = 1 << 20;
+
+    public static void write(final IssueGraph graph, final Path file) {
+        final Path tmp = file.toAbsolutePath().resolveSibling(file.getFileName() + ".tmp");
+        try {
+            if (tmp.getParent() != null) {
+                Files.createDirectories(tmp.getParent());
+            }
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(tmp), 1 << 16), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(graph.nodeCount());
+                for (int node = 0; node < graph.nodeCount(); node++) {
+                    writeString(out, graph.id(node));
+                    writeString(out, graph.key(node));
+                    writeString(out, graph.summary(node));
+                    writeString(out, graph.status(node));
+                    writeString(out, graph.fixVersions(node));
+                }
+                out.writeInt(graph.edgeCount());
+                for (int node = 0; node < graph.nodeCount(); node++) {
+                    for (int i = 0; i < graph.outDegree(node); i++) {
+                        out.writeInt(node);
+                        out.writeInt(graph.target(node, i));
+                        out.writeByte(graph.type(node, i).ordinal());
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static IssueGraph read(final Path file) {
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file), 1 << 16), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException(file + " is not a report snapshot");
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported snapshot version " + version + " in " + file);
+            }
+            final IssueGraph.Builder builder = IssueGraph.builder();
+            final int nodes = in.readInt();
+            checkCorruption(nodes >= 0, file);
+            for (int node = 0; node < nodes; node++) {
+                final int index = builder.addNode(readString(in, file), readString(in, file), readString(in, file),
+                        null, readString(in, file), readString(in, file));
+                // a duplicated id would shift the indices the links refer to
+                checkCorruption(index == node, file);
+            }
+            final IssueGraph.LinkType[] types = IssueGraph.LinkType.values();
+            final int edges = in.readInt();
+            checkCorruption(edges >= 0, file);
+            for (int edge = 0; edge < edges; edge++) {
+                final int source = in.readInt();
+                final int target = in.readInt();
+                final int type = in.readByte();
+                checkCorruption(source >= 0 && source < nodes && target >= 0 && target < nodes
+                        && type >= 0 && type < types.length, file);
+                builder.addEdge(source, target, types[type]);
+            }
+            return builder.build();
+        } catch (final EOFException | ZipException e) {
+            throw new IllegalArgumentException(file + " is truncated or corrupted", e);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in, final Path file) throws IOException {
+        final int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        checkCorruption(length >= 0 && length <= MAX_STRING_LENGTH, file);
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void checkCorruption(final boolean valid, final Path file) {
+        if (!valid) {
+            throw new IllegalArgumentException(file + " is corrupted");
+        }
+    }
+}
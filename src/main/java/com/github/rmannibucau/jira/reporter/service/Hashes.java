@@ -0,0 +1,60 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class Hashes {
+
+    static String sha1(final String value) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return a 64 bits FNV-1a hash of the values, null and empty values differ.
+     */
+    static long hash64(final String... values) {
+        long hash = 0xcbf29ce484222325L;
+        for (final String value : values) {
+            if (value == null) {
+                hash = (hash ^ 0xff) * 0x100000001b3L;
+                continue;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                hash = (hash ^ (c & 0xff)) * 0x100000001b3L;
+                hash = (hash ^ (c >>> 8)) * 0x100000001b3L;
+            }
+            hash = (hash ^ 0xfe) * 0x100000001b3L; // separator, ("ab", "c") != ("a", "bc")
+        }
+        return hash;
+    }
+}
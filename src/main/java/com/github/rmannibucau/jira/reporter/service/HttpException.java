@@ -0,0 +1,37 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import lombok.Getter;
+
+/**
+ * An error response (status >= 400) or a request still throttled after the last retry.
+ */
+@Getter
+public class HttpException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    private final String body;
+
+    public HttpException(final int status, final String body) {
+        super("HTTP " + status + (body == null || body.isEmpty() ? "" : ": " + body));
+        this.status = status;
+        this.body = body;
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+
+import lombok.Getter;
+
+/**
+ * Transport independent response, a gzip encoded body is transparently decompressed.
+ */
+public class HttpResponse implements AutoCloseable {
+
+    @Getter
+    private final int status;
+
+    private final Function<String, String> headers;
+
+    // counts the bytes on the wire (before decompression)
+    private final CountingInputStream raw;
+
+    private InputStream body;
+
+    /**
+     * @param status the HTTP status.
+     * @param headers the header lookup, names are case insensitive.
+     * @param body the raw body, can be null.
+     */
+    public HttpResponse(final int status, final Function<String, String> headers, final InputStream body) {
+        this.status = status;
+        this.headers = headers;
+        this.raw = new CountingInputStream(body == null ? new ByteArrayInputStream(new byte[0]) : body);
+    }
+
+    public String getHeader(final String name) {
+        return headers.apply(name);
+    }
+
+    public synchronized InputStream getBody() {
+        if (body == null) {
+            try {
+                body = "gzip".equalsIgnoreCase(getHeader("Content-Encoding")) ? new GZIPInputStream(raw) : raw;
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return body;
+    }
+
+    public byte[] readBytes() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        try (final InputStream stream = getBody()) {
+            int read;
+            while ((read = stream.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public String readString() {
+        return new String(readBytes(), StandardCharsets.UTF_8);
+    }
+
+    public long getReceivedBytes() {
+        return raw.getCount();
+    }
+
+    @Override
+    public void close() {
+        try {
+            raw.close();
+        } catch (final IOException e) {
+            // no-op
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends the GET requests of the client, network failures complete the future with an
+ * {@link java.io.UncheckedIOException} so they can be retried.
+ */
+public interface HttpTransport extends AutoCloseable {
+
+    /**
+     * @param uri the url to call.
+     * @param headers the request headers.
+     * @return the response, the caller closes it.
+     */
+    CompletableFuture<HttpResponse> get(String uri, Map<String, String> headers);
+
+    @Override
+    void close();
+
+    /**
+     * @param name {@code cxf} (JAX-RS client) or {@code jdk} (plain HttpURLConnection, faster to start).
+     * @param connectTimeout the connection timeout in ms.
+     * @param readTimeout the receive timeout in ms.
+     * @param maxConnections the number of concurrent requests, also used as kept alive connections per host.
+     * @return the transport.
+     */
+    static HttpTransport create(final String name, final long connectTimeout, final long readTimeout,
+                                final int maxConnections) {
+        // both transports rely on HttpURLConnection keep-alive cache which keeps only 5 connections per host by default,
+        // it is read once so it must be set before the first connection
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", Integer.toString(Math.max(5, maxConnections)));
+        }
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "cxf":
+                return new CxfTransport(connectTimeout, readTimeout, maxConnections);
+            case "jdk":
+                return new UrlConnectionTransport(connectTimeout, readTimeout, maxConnections);
+            default:
+                throw new IllegalArgumentException("Unsupported transport: '" + name + "', use cxf or jdk");
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Stores avatars on disk (one file per url) and revalidates them with ETag/Last-Modified.
+ * Once loaded an avatar is kept in memory and revalidated the same way when it is requested after the ttl,
+ * a long running server sees the updated avatars without downloading the unchanged ones again.
+ */
+@Slf4j
+public class IconCache implements AutoCloseable {
+
+    public static final long DEFAULT_TTL = 3600000;
+
+    // null for a memory only cache
+    private final Path directory;
+
+    private final long ttl;
+
+    private final Jsonb jsonb = JsonbBuilder.create();
+
+    private final Map<String, Loaded> memory = new ConcurrentHashMap<>();
+
+    public IconCache(final Path directory) {
+        this(directory, DEFAULT_TTL);
+    }
+
+    /**
+     * @param directory where to store the avatars, null to only keep them in memory.
+     * @param ttl how long (in milliseconds) an avatar loaded in memory is used without being revalidated.
+     */
+    public IconCache(final Path directory, final long ttl) {
+        this.directory = directory;
+        this.ttl = ttl;
+    }
+
+    @Override
+    public void close() {
+        try {
+            jsonb.close();
+        } catch (final Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param jira the client used to (re)validate the icon.
+     * @param uri the icon url.
+     * @return the icon as a data uri or an empty string if it can't be loaded.
+     */
+    public String get(final Jira jira, final String uri) {
+        return getAsync(jira, uri).join();
+    }
+
+    /**
+     * Asynchronous flavor of {@link #get(Jira, String)}, it never completes exceptionally.
+     */
+    public CompletableFuture<String> getAsync(final Jira jira, final String uri) {
+        final Loaded loaded = memory.get(uri);
+        if (loaded != null && System.currentTimeMillis() - loaded.timestamp < ttl) {
+            return CompletableFuture.completedFuture(loaded.dataUri);
+        }
+        final Path file = directory == null ? null : directory.resolve(Hashes.sha1(uri) + ".json");
+        final Jira.Icon cached = loaded != null ? loaded.icon : read(file);
+        return jira.getIconAsync(uri, cached).handle((icon, error) -> {
+            if (error == null) {
+                if (icon != cached && file != null) {
+                    write(file, icon);
+                }
+                final String dataUri = loaded != null && icon == cached ? loaded.dataUri : icon.toDataUri();
+                memory.put(uri, new Loaded(icon, dataUri, System.currentTimeMillis()));
+                return dataUri;
+            }
+            if (cached != null) {
+                log.warn("Can't revalidate {}, using cached version: {}", uri, error.getMessage());
+                if (loaded != null) { // retried after the next ttl
+                    memory.put(uri, new Loaded(cached, loaded.dataUri, System.currentTimeMillis()));
+                    return loaded.dataUri;
+                }
+                return cached.toDataUri();
+            }
+            log.error("Can't retrieve icon {}: {}", uri, error.getMessage());
+            return "";
+        });
+    }
+
+    private Jira.Icon read(final Path file) {
+        if (file == null || !Files.exists(file)) {
+            return null;
+        }
+        try (final InputStream stream = Files.newInputStream(file)) {
+            return jsonb.fromJson(stream, Jira.Icon.class);
+        } catch (final Exception e) {
+            log.warn("Can't read {}, ignoring it: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private void write(final Path file, final Jira.Icon icon) {
+        try {
+            Files.createDirectories(directory);
+            final Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (final OutputStream stream = Files.newOutputStream(tmp)) {
+                jsonb.toJson(icon, stream);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final Exception e) {
+            log.warn("Can't cache {}: {}", icon.getUrl(), e.getMessage());
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class Loaded {
+
+        private final Jira.Icon icon;
+
+        private final String dataUri;
+
+        private final long timestamp;
+    }
+}
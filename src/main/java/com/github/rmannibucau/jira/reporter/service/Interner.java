@@ -0,0 +1,68 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shares a canonical instance of equal values (flyweight).
+ * <p>
+ * An interned value is shared by all the issues read by the same reader so it must be treated as immutable
+ * even if its type has setters (the Jira DTOs): code needing a modified value works on a copy
+ * (see how {@link DependencyCrawler} and {@link Federation} build new {@link Jira.Fields}).
+ * <p>
+ * The table is bounded: past its capacity the oldest entries are evicted one at a time, so a long running process
+ * does not retain values which are not used anymore while the other values stay shared. An evicted value read again
+ * just gets a new canonical instance.
+ */
+final class Interner<T> {
+
+    private final ConcurrentMap<T, T> values = new ConcurrentHashMap<>();
+
+    // insertion order, the head is the next value to evict
+    private final Queue<T> order = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final int capacity;
+
+    Interner(final int capacity) {
+        this.capacity = capacity;
+    }
+
+    T intern(final T value) {
+        if (value == null) {
+            return null;
+        }
+        final T existing = values.putIfAbsent(value, value);
+        if (existing != null) {
+            return existing;
+        }
+        order.add(value);
+        if (size.incrementAndGet() > capacity) {
+            final T eldest = order.poll();
+            if (eldest != null) {
+                values.remove(eldest);
+                size.decrementAndGet();
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,343 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compact issue graph: issues are interned to contiguous ints and the links are stored as a
+ * CSR (compressed sparse row) adjacency, {@code targets[offsets[n]..offsets[n + 1]]} being the
+ * outgoing links of the node {@code n}. A link appears only once whatever the number of sides declaring it.
+ */
+public final class IssueGraph {
+
+    private static final int TYPE_BITS = 4;
+
+    private static final int MAX_NODES = 1 << (Integer.SIZE - TYPE_BITS);
+
+    private final String[] ids;
+
+    private final String[] keys;
+
+    private final String[] summaries;
+
+    private final String[] icons;
+
+    private final String[] statuses;
+
+    // comma separated names
+    private final String[] fixVersions;
+
+    private final Map<String, Integer> index;
+
+    private final int[] offsets;
+
+    private final int[] targets;
+
+    private final byte[] types;
+
+    private IssueGraph(final String[] ids, final String[] keys, final String[] summaries, final String[] icons,
+                       final String[] statuses, final String[] fixVersions, final Map<String, Integer> index,
+                       final int[] offsets, final int[] targets, final byte[] types) {
+        this.ids = ids;
+        this.keys = keys;
+        this.summaries = summaries;
+        this.icons = icons;
+        this.statuses = statuses;
+        this.fixVersions = fixVersions;
+        this.index = index;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.types = types;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int nodeCount() {
+        return ids.length;
+    }
+
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * @param id the issue id.
+     * @return the node index or -1 if the issue is not in the graph.
+     */
+    public int indexOf(final String id) {
+        final Integer value = index.get(id);
+        return value == null ? -1 : value;
+    }
+
+    public String id(final int node) {
+        return ids[node];
+    }
+
+    public String key(final int node) {
+        return keys[node];
+    }
+
+    public String summary(final int node) {
+        return summaries[node];
+    }
+
+    public String icon(final int node) {
+        return icons[node];
+    }
+
+    public String status(final int node) {
+        return statuses[node];
+    }
+
+    /**
+     * @return the comma separated fix version names, null if there is none.
+     */
+    public String fixVersions(final int node) {
+        return fixVersions[node];
+    }
+
+    /**
+     * @return the project key deduced from the issue key, empty if the key has no project prefix.
+     */
+    public String project(final int node) {
+        final String key = keys[node];
+        final int dash = key == null ? -1 : key.lastIndexOf('-');
+        return dash < 0 ? "" : key.substring(0, dash);
+    }
+
+    public int outDegree(final int node) {
+        return offsets[node + 1] - offsets[node];
+    }
+
+    /**
+     * @param node the source node.
+     * @param i the link position in [0, outDegree(node)[.
+     * @return the target node of the link.
+     */
+    public int target(final int node, final int i) {
+        return targets[offsets[node] + i];
+    }
+
+    /**
+     * @return a stable index in [0, edgeCount()[ of the {@code i}-th link of {@code node}.
+     */
+    public int edgeIndex(final int node, final int i) {
+        return offsets[node] + i;
+    }
+
+    /**
+     * @return the index (see {@link #edgeIndex(int, int)}) of the link from {@code source} to {@code target}, -1 if there is none.
+     */
+    public int findEdge(final int source, final int target) {
+        final int found = Arrays.binarySearch(targets, offsets[source], offsets[source + 1], target);
+        return found < 0 ? -1 : found;
+    }
+
+    public LinkType type(final int node, final int i) {
+        return LinkType.VALUES[types[offsets[node] + i]];
+    }
+
+    public void forEachEdge(final EdgeVisitor visitor) {
+        for (int source = 0; source < ids.length; source++) {
+            for (int e = offsets[source]; e < offsets[source + 1]; e++) {
+                visitor.visit(source, targets[e], LinkType.VALUES[types[e]]);
+            }
+        }
+    }
+
+    /**
+     * @param nodes the nodes to keep.
+     * @return the graph of these nodes and the links between them, nodes are renumbered in the given order.
+     */
+    public IssueGraph subgraph(final int[] nodes) {
+        final int[] mapping = new int[ids.length];
+        Arrays.fill(mapping, -1);
+        final Builder builder = new Builder();
+        for (final int node : nodes) {
+            mapping[node] = builder.addNode(ids[node], keys[node], summaries[node], icons[node],
+                    statuses[node], fixVersions[node]);
+        }
+        for (final int node : nodes) {
+            for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                if (mapping[targets[e]] >= 0) {
+                    builder.addEdge(mapping[node], mapping[targets[e]], LinkType.VALUES[types[e]]);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    @FunctionalInterface
+    public interface EdgeVisitor {
+
+        void visit(int source, int target, LinkType type);
+    }
+
+    public enum LinkType {
+        BLOCKS, CLONES, DUPLICATES, RELATES, OTHER;
+
+        private static final LinkType[] VALUES = values();
+
+        /**
+         * @param name the Jira link type name ("Blocks", "Cloners", ...).
+         * @return the matching type, {@link #OTHER} if unknown.
+         */
+        public static LinkType of(final String name) {
+            if (name == null) {
+                return OTHER;
+            }
+            final String normalized = name.toLowerCase(Locale.ROOT);
+            if (normalized.startsWith("block")) {
+                return BLOCKS;
+            }
+            if (normalized.startsWith("clone")) {
+                return CLONES;
+            }
+            if (normalized.startsWith("duplicate")) {
+                return DUPLICATES;
+            }
+            if (normalized.startsWith("relate")) {
+                return RELATES;
+            }
+            return OTHER;
+        }
+    }
+
+    /**
+     * Not thread safe, nodes must be added before the links referencing them.
+     */
+    public static final class Builder {
+
+        private final Map<String, Integer> index = new HashMap<>();
+
+        private String[] ids = new String[16];
+
+        private String[] keys = new String[16];
+
+        private String[] summaries = new String[16];
+
+        private String[] icons = new String[16];
+
+        private String[] statuses = new String[16];
+
+        private String[] fixVersions = new String[16];
+
+        private int nodes;
+
+        // (source << 32) | (target << TYPE_BITS) | type, sorting them groups the links per source
+        private long[] edges = new long[16];
+
+        private int edgeCount;
+
+        private Builder() {
+            // no-op
+        }
+
+        /**
+         * @return the node index, an already added id is not duplicated.
+         */
+        public int addNode(final String id, final String key, final String summary, final String icon,
+                           final String status, final String fixVersions) {
+            final Integer existing = index.get(id);
+            if (existing != null) {
+                return existing;
+            }
+            if (nodes == MAX_NODES) {
+                throw new IllegalStateException("Too many issues: " + nodes);
+            }
+            if (nodes == ids.length) {
+                final int size = nodes * 2;
+                ids = Arrays.copyOf(ids, size);
+                keys = Arrays.copyOf(keys, size);
+                summaries = Arrays.copyOf(summaries, size);
+                icons = Arrays.copyOf(icons, size);
+                statuses = Arrays.copyOf(statuses, size);
+                this.fixVersions = Arrays.copyOf(this.fixVersions, size);
+            }
+            ids[nodes] = id;
+            keys[nodes] = key;
+            summaries[nodes] = summary;
+            icons[nodes] = icon;
+            statuses[nodes] = status;
+            this.fixVersions[nodes] = fixVersions;
+            index.put(id, nodes);
+            return nodes++;
+        }
+
+        /**
+         * @return true if the link was recorded, false if one of the issues is not a node.
+         */
+        public boolean addEdge(final String sourceId, final String targetId, final LinkType type) {
+            final Integer source = index.get(sourceId);
+            final Integer target = index.get(targetId);
+            if (source == null || target == null) {
+                return false;
+            }
+            addEdge(source, target, type);
+            return true;
+        }
+
+        /**
+         * @param source the index of the source node as returned by {@link #addNode}.
+         * @param target the index of the target node.
+         */
+        public void addEdge(final int source, final int target, final LinkType type) {
+            if (edgeCount == edges.length) {
+                edges = Arrays.copyOf(edges, edgeCount * 2);
+            }
+            edges[edgeCount++] = ((long) source << Integer.SIZE) | ((long) target << TYPE_BITS) | type.ordinal();
+        }
+
+        /**
+         * @return an immutable graph, the builder can still be used and built again without affecting it.
+         */
+        public IssueGraph build() {
+            final long[] sorted = Arrays.copyOf(edges, edgeCount);
+            Arrays.sort(sorted);
+
+            final int[] offsets = new int[nodes + 1];
+            final int[] targets = new int[sorted.length];
+            final byte[] types = new byte[sorted.length];
+            int count = 0;
+            long previous = -1;
+            for (final long edge : sorted) {
+                final long link = edge >>> TYPE_BITS; // ignore the type, the most specific (lowest) one wins
+                if (link == previous) {
+                    continue;
+                }
+                previous = link;
+                offsets[(int) (edge >>> Integer.SIZE) + 1]++;
+                targets[count] = (int) (link & (MAX_NODES - 1));
+                types[count] = (byte) (edge & ((1 << TYPE_BITS) - 1));
+                count++;
+            }
+            for (int i = 0; i < nodes; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            return new IssueGraph(
+                    Arrays.copyOf(ids, nodes), Arrays.copyOf(keys, nodes),
+                    Arrays.copyOf(summaries, nodes), Arrays.copyOf(icons, nodes),
+                    Arrays.copyOf(statuses, nodes), Arrays.copyOf(fixVersions, nodes),
+                    new HashMap<>(index), offsets, Arrays.copyOf(targets, count), Arrays.copyOf(types, count));
+        }
+    }
+}
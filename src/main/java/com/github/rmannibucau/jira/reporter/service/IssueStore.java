@@ -0,0 +1,224 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the issues of a Jira instance on disk to only fetch what changed since the last run.
+ * A store is bound to a base url and a fields list since the cached issues depend on both.
+ */
+@Slf4j
+public class IssueStore {
+
+    private static final int RECONCILIATION_CHUNK = 100;
+
+    // thread safe and cheap to keep, it is not closed
+    private static final Jsonb JSONB = JsonbBuilder.create();
+
+    // null for a memory only store
+    private final Path file;
+
+    private final State state;
+
+    private IssueStore(final Path file, final State state) {
+        this.file = file;
+        this.state = state;
+    }
+
+    public static IssueStore inMemory(final String baseUrl, final String fields) {
+        final State state = new State();
+        state.setBaseUrl(baseUrl);
+        state.setFields(fields);
+        return new IssueStore(null, state);
+    }
+
+    public static IssueStore load(final Path directory, final String baseUrl, final String fields) {
+        final Path file = directory.resolve("issues-" + Hashes.sha1(baseUrl + '\n' + fields) + ".json");
+        if (Files.exists(file)) {
+            try (final InputStream stream = Files.newInputStream(file)) {
+                final State state = JSONB.fromJson(stream, State.class);
+                if (baseUrl.equals(state.getBaseUrl()) && fields.equals(state.getFields())) {
+                    log.debug("Loaded {} issues from {}", state.getIssues().size(), file);
+                    return new IssueStore(file, state);
+                }
+                log.warn("Ignoring {} which does not match {} (fields={})", file, baseUrl, fields);
+            } catch (final Exception e) {
+                log.warn("Can't read {}, ignoring it: {}", file, e.getMessage());
+            }
+        }
+        final State state = new State();
+        state.setBaseUrl(baseUrl);
+        state.setFields(fields);
+        return new IssueStore(file, state);
+    }
+
+    /**
+     * Synchronizes the issues matching a query and returns them. Only the issues updated since the last
+     * synchronization are fetched except for a full refresh or when the id reconciliation is due, in which case
+     * the ids matching the query are listed to forget the deleted or no more matching issues.
+     * The excluded statuses are part of the queries so the excluded issues are neither downloaded nor stored,
+     * a query is synchronized independently for each exclusion set.
+     *
+     * @param jira the client to use.
+     * @param jql the query to synchronize.
+     * @param excludedStatuses the statuses to ignore.
+     * @param fullRefresh should the local state be ignored.
+     * @param reconcileInterval the duration (ms) after which an id reconciliation is done.
+     * @return the issues matching the query and not in an excluded status.
+     */
+    public Stream<Jira.JiraIssue> sync(final Jira jira, final String jql, final String[] excludedStatuses,
+                                       final boolean fullRefresh, final long reconcileInterval) {
+        final long now = System.currentTimeMillis();
+        final String key = key(jql, excludedStatuses);
+        final Sync sync = state.getSyncs().get(key);
+        if (fullRefresh || sync == null) {
+            final Sync fresh = new Sync();
+            fresh.setIds(jira.query(jql, excludedStatuses).peek(this::put).map(Jira.JiraIssue::getId).collect(toSet()));
+            fresh.setLastSync(now);
+            fresh.setLastReconciliation(now);
+            state.getSyncs().put(key, fresh);
+            log.info("Fully synchronized '{}' ({} issues)", jql, fresh.getIds().size());
+            return issues(fresh);
+        }
+
+        // relative dates avoid to depend on the user timezone, add a minute of margin since jql is minute based
+        final long minutes = TimeUnit.MILLISECONDS.toMinutes(now - sync.getLastSync()) + 2;
+        final String updatedJql = "(" + jql + ") AND updated >= \"-" + minutes + "m\"";
+        final Collection<String> updated = jira.query(updatedJql, excludedStatuses)
+                .peek(this::put).map(Jira.JiraIssue::getId).collect(toList());
+        sync.getIds().addAll(updated);
+        if (excludedStatuses.length > 0) {
+            // the issues moved to an excluded status are not returned anymore, only their ids are listed to forget them
+            final Set<String> kept = new HashSet<>(updated);
+            final long excluded = jira.queryIds(updatedJql)
+                    .filter(id -> !kept.contains(id))
+                    .filter(sync.getIds()::remove)
+                    .count();
+            log.debug("{} issues of '{}' moved to an excluded status", excluded, jql);
+        }
+        log.info("Synchronized {} updated issues for '{}'", updated.size(), jql);
+
+        if (now - sync.getLastReconciliation() >= reconcileInterval) {
+            reconcile(jira, jql, excludedStatuses, sync);
+            sync.setLastReconciliation(now);
+        }
+        sync.setLastSync(now);
+        return issues(sync);
+    }
+
+    public void save() {
+        // drop the issues no more referenced by any query
+        final Set<String> referenced = state.getSyncs().values().stream()
+                .flatMap(it -> it.getIds().stream())
+                .collect(toSet());
+        state.getIssues().keySet().retainAll(referenced);
+        if (file == null) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(file.getParent());
+            final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (final OutputStream stream = Files.newOutputStream(tmp)) {
+                JSONB.toJson(state, stream);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final Exception e) {
+            throw new IllegalStateException(e);
+        }
+        log.debug("Saved {} issues in {}", state.getIssues().size(), file);
+    }
+
+    private void reconcile(final Jira jira, final String jql, final String[] excludedStatuses, final Sync sync) {
+        final Set<String> ids = jira.queryIds(jql, excludedStatuses).collect(toSet());
+        final int removed = (int) sync.getIds().stream().filter(it -> !ids.contains(it)).count();
+        sync.setIds(ids);
+
+        // issues matching without having been updated (relative dates in the jql for instance)
+        final List<String> missing = ids.stream().filter(it -> !state.getIssues().containsKey(it)).collect(toList());
+        for (final String query : jira.planIn("id", missing, excludedStatuses, RECONCILIATION_CHUNK)) {
+            jira.query(query, excludedStatuses).forEach(this::put);
+        }
+        log.info("Reconciled '{}': {} issues removed, {} added", jql, removed, missing.size());
+    }
+
+    private void put(final Jira.JiraIssue issue) {
+        state.getIssues().put(issue.getId(), issue);
+    }
+
+    // the query alone for the queries without exclusion, it keeps the states written before the exclusions were pushed down
+    private static String key(final String jql, final String[] excludedStatuses) {
+        final String exclusion = Stream.of(excludedStatuses)
+                .map(it -> it.trim().toLowerCase(Locale.ROOT))
+                .filter(it -> !it.isEmpty())
+                .sorted()
+                .distinct()
+                .collect(joining(","));
+        return exclusion.isEmpty() ? jql : jql + "\nstatus not in " + exclusion;
+    }
+
+    private Stream<Jira.JiraIssue> issues(final Sync sync) {
+        return new ArrayList<>(sync.getIds()).stream().map(state.getIssues()::get).filter(Objects::nonNull);
+    }
+
+    @Data
+    public static class State {
+
+        private String baseUrl;
+
+        private String fields;
+
+        private Map<String, Sync> syncs = new HashMap<>();
+
+        private Map<String, Jira.JiraIssue> issues = new HashMap<>();
+    }
+
+    @Data
+    public static class Sync {
+
+        private long lastSync;
+
+        private long lastReconciliation;
+
+        private Set<String> ids = new HashSet<>();
+    }
+}
@@ -15,87 +15,426 @@
  */
 package com.github.rmannibucau.jira.reporter.service;
 
+import static java.util.Collections.unmodifiableMap;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
-import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
 
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
-import javax.ws.rs.client.WebTarget;
-import javax.ws.rs.core.Response;
-
-import org.apache.johnzon.jaxrs.jsonb.jaxrs.JsonbJaxrsProvider;
+import javax.json.Json;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
 
 import lombok.Data;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 
+@Slf4j
 public class Jira implements AutoCloseable {
 
-    private final Client client;
+    public static final int DEFAULT_URL_BUDGET = 4096;
+
+    public static final int DEFAULT_MAX_CONCURRENCY = 16;
+
+    public static final int DEFAULT_MAX_RETRIES = 5;
+
+    public static final long DEFAULT_BACKOFF = 500;
+
+    public static final String DEFAULT_TRANSPORT = "cxf";
+
+    public static final String DEFAULT_FIELDS = "issuelinks,summary,status,project";
+
+    // the status filter and the dependency crawling can't work without them
+    private static final String REQUIRED_FIELDS = "issuelinks,status";
+
+    @Getter
+    private final String baseUrl;
+
+    private final HttpTransport transport;
+
+    private final Map<String, String> headers;
+
+    @Getter
+    private final String fields;
+
+    private final SearchReader reader;
 
-    private final WebTarget target;
+    private final JqlPlanner planner;
 
-    private final String authorization;
+    private final RequestScheduler scheduler;
+
+    private final int pageSize;
+
+    private final ExecutorService pageExecutor;
+
+    // optional, records the fetched search pages and replays them when resuming a run
+    private volatile SearchJournal journal;
+
+    // lower cased names of the statuses of the instance, loaded with the first status exclusion,
+    // empty if they can't be listed
+    private volatile Optional<Set<String>> statuses;
+
+    private final Set<String> unknownStatuses = ConcurrentHashMap.newKeySet();
 
     public Jira(final String url, final String username, final String password, final long timeout) {
-        client = ClientBuilder.newClient().register(new JsonbJaxrsProvider<>());
-        target = client.target(url + "/rest/api/2").property("http.connection.timeout", timeout);
-        authorization = username != null
-                ? "Basic " + Base64.getEncoder().encodeToString((username + ':' + password).getBytes(StandardCharsets.UTF_8))
-                : null;
+        this(url, username, password, HttpTransport.create(DEFAULT_TRANSPORT, timeout, timeout, DEFAULT_MAX_CONCURRENCY),
+                -1, 1, DEFAULT_FIELDS, DEFAULT_URL_BUDGET,
+                new RequestScheduler(DEFAULT_MAX_CONCURRENCY, DEFAULT_MAX_RETRIES, DEFAULT_BACKOFF, new Stats()));
+    }
+
+    /**
+     * @param transport sends the requests, it is closed with this client.
+     * @param pageSize the requested {@code maxResults} for searches, a negative value uses the server default.
+     * @param pageConcurrency how many pages of a search can be fetched concurrently.
+     * @param fields the issue fields to request and keep (comma separated), status and issuelinks are always added.
+     * @param urlBudget the maximum size of the encoded jql, used to split id/key lists.
+     * @param scheduler executes the requests, it handles the concurrency limit and retries.
+     */
+    public Jira(final String url, final String username, final String password, final HttpTransport transport,
+                final int pageSize, final int pageConcurrency, final String fields, final int urlBudget,
+                final RequestScheduler scheduler) {
+        baseUrl = url;
+        this.transport = transport;
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("Accept", "application/json");
+        headers.put("Accept-Encoding", "gzip");
+        if (username != null) {
+            headers.put("Authorization", "Basic " + Base64.getEncoder()
+                    .encodeToString((username + ':' + password).getBytes(StandardCharsets.UTF_8)));
+        }
+        this.headers = unmodifiableMap(headers);
+        this.fields = fields(REQUIRED_FIELDS, fields);
+        this.reader = new SearchReader(this.fields);
+        this.planner = new JqlPlanner(urlBudget);
+        this.scheduler = scheduler;
+        this.pageSize = pageSize;
+        this.pageExecutor = Executors.newFixedThreadPool(Math.max(1, pageConcurrency), new NamedThreadFactory("jira-reporter-page-"));
+    }
+
+    public Stats getStats() {
+        return scheduler.getStats();
+    }
+
+    /**
+     * @param journal where to record the search pages, the journaled pages are not requested again.
+     */
+    public void setJournal(final SearchJournal journal) {
+        this.journal = journal;
     }
 
     @Override
     public void close() {
-        if (client != null) {
-            client.close();
-        }
+        pageExecutor.shutdownNow();
+        transport.close();
+        scheduler.close();
     }
 
+    /**
+     * @param jql the query to execute.
+     * @param excludedStatuses the statuses to exclude, the ones existing on the instance are filtered server side.
+     * @return the matching issues.
+     */
     public Stream<JiraIssue> query(final String jql, final String[] excludedStatuses) {
-        final Function<Long, JiraIssues> searchFrom = startAt -> target.path("search").queryParam("jql", jql)
-                .queryParam("startAt", startAt).queryParam("fields", "issuelinks,issuetype,summary,status,fixVersions,project")
-                .request(APPLICATION_JSON_TYPE).header("Authorization", authorization).get(JiraIssues.class);
-        final Function<JiraIssues, Stream<JiraIssues>> paginate = new Function<JiraIssues, Stream<JiraIssues>>() {
-
-            @Override
-            public Stream<JiraIssues> apply(final JiraIssues issues) {
-                final long nextStartAt = issues.getStartAt() + issues.getMaxResults();
-                final Stream<JiraIssues> fetched = Stream.of(issues);
-                return issues.getTotal() > nextStartAt ? Stream.concat(fetched, apply(searchFrom.apply(nextStartAt))).parallel()
-                        : fetched;
-            }
-        };
+        return search(planner.excludeStatuses(jql, serverSideStatuses(excludedStatuses)), fields)
+                .filter(statusFilter(excludedStatuses));
+    }
+
+    /**
+     * Asynchronous flavor of {@link #query(String, String[])}: all the pages after the first one are requested
+     * at once, the scheduler bounds how many requests are actually in flight.
+     *
+     * @param jql the query to execute.
+     * @param excludedStatuses the statuses to exclude, the ones existing on the instance are filtered server side.
+     * @return the matching issues.
+     */
+    public CompletableFuture<List<JiraIssue>> queryAsync(final String jql, final String[] excludedStatuses) {
+        final Predicate<JiraIssue> filter = statusFilter(excludedStatuses);
+        return searchAsync(planner.excludeStatuses(jql, serverSideStatuses(excludedStatuses)), fields)
+                .thenApply(issues -> issues.filter(filter).collect(toList()));
+    }
+
+    /**
+     * @param field {@code id} or {@code key}.
+     * @param values the identifiers to look up.
+     * @param excludedStatuses the statuses which will be excluded when executing the queries.
+     * @param maxValues the maximum number of values per query.
+     * @return the {@code in} queries to pass to {@link #query(String, String[])}, they fit the url budget.
+     */
+    public List<String> planIn(final String field, final Collection<String> values, final String[] excludedStatuses,
+                               final int maxValues) {
+        return planner.planIn(field, values, serverSideStatuses(excludedStatuses), maxValues);
+    }
+
+    /**
+     * @param jql the query to execute.
+     * @return the identifiers of the matching issues, no field is requested.
+     */
+    public Stream<String> queryIds(final String jql) {
+        return queryIds(jql, new String[0]);
+    }
+
+    /**
+     * @param jql the query to execute.
+     * @param excludedStatuses the statuses to ignore, excluded server side since the status is not requested.
+     * @return the identifiers of the matching issues, no field is requested.
+     */
+    public Stream<String> queryIds(final String jql, final String[] excludedStatuses) {
+        return search(planner.excludeStatuses(jql, serverSideStatuses(excludedStatuses)), "id").map(JiraIssue::getId);
+    }
+
+    /**
+     * @param fields comma separated field lists, null values are ignored.
+     * @return the union of the lists.
+     */
+    public static String fields(final String... fields) {
+        return Stream.of(fields)
+                .filter(Objects::nonNull)
+                .flatMap(it -> Stream.of(it.split(",")))
+                .map(String::trim)
+                .filter(it -> !it.isEmpty())
+                .distinct()
+                .collect(joining(","));
+    }
+
+    public static Predicate<JiraIssue> statusFilter(final String[] excludedStatuses) {
         final Set<String> excludeStatus = Stream.of(excludedStatuses).collect(toSet());
-        return Stream.of(searchFrom.apply(0L)).flatMap(paginate::apply).filter(i -> i.issues != null)
-                .flatMap(i -> i.issues.stream()).filter(i -> i.fields != null && i.fields.status != null
-                        && excludeStatus.stream().noneMatch(it -> it.equalsIgnoreCase(i.fields.status.name)));
+        return i -> i.fields != null && i.fields.status != null
+                && excludeStatus.stream().noneMatch(it -> it.equalsIgnoreCase(i.fields.status.name));
+    }
+
+    // Jira rejects (HTTP 400) a query referencing an unknown status, only the existing ones are sent,
+    // the other ones can't match any issue and the client side filter still applies all of them
+    private String[] serverSideStatuses(final String[] excludedStatuses) {
+        if (excludedStatuses == null || excludedStatuses.length == 0) {
+            return excludedStatuses;
+        }
+        final Optional<Set<String>> known = statuses();
+        if (!known.isPresent()) {
+            return new String[0];
+        }
+        return Stream.of(excludedStatuses)
+                .filter(it -> it != null && !it.trim().isEmpty())
+                .filter(it -> {
+                    if (known.get().contains(it.trim().toLowerCase(Locale.ROOT))) {
+                        return true;
+                    }
+                    if (unknownStatuses.add(it)) {
+                        log.warn("Status '{}' does not exist on {}, ignoring it", it, baseUrl);
+                    }
+                    return false;
+                })
+                .toArray(String[]::new);
+    }
+
+    private Optional<Set<String>> statuses() {
+        Optional<Set<String>> known = statuses;
+        if (known == null) {
+            synchronized (this) {
+                known = statuses;
+                if (known == null) {
+                    known = loadStatuses();
+                    statuses = known;
+                }
+            }
+        }
+        return known;
     }
 
-    public String getIcon(final String uri) {
-        String icon = "";
+    private Optional<Set<String>> loadStatuses() {
         try {
-            final Response image = client.target(uri).request().header("Authorization", authorization).get();
-            String contentType = image.getHeaderString("Content-Type");
-            if (contentType.contains(";")) {
-                contentType = contentType.substring(0, contentType.indexOf(';'));
+            return Optional.of(scheduler.execute("status", () -> transport.get(baseUrl + "/rest/api/2/status", headers), response -> {
+                try (final JsonReader reader = Json.createReader(response.getBody())) {
+                    return reader.readArray().stream()
+                            .filter(it -> it.getValueType() == JsonValue.ValueType.OBJECT)
+                            .map(it -> it.asJsonObject().getString("name", null))
+                            .filter(Objects::nonNull)
+                            .map(it -> it.toLowerCase(Locale.ROOT))
+                            .collect(toSet());
+                }
+            }));
+        } catch (final RuntimeException re) {
+            log.warn("Can't list the statuses of {}, they will be excluded client side: {}", baseUrl, re.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private Stream<JiraIssue> search(final String jql, final String requestedFields) {
+        final Function<Long, JiraIssues> searchFrom = startAt -> {
+            final JiraIssues replayed = replay(jql, requestedFields, startAt);
+            return replayed != null ? replayed : scheduler.execute("search",
+                    () -> transport.get(searchUri(jql, requestedFields, startAt), headers),
+                    response -> readSearch(jql, requestedFields, startAt, response));
+        };
+        return paginate(searchFrom).filter(i -> i.issues != null).flatMap(i -> i.issues.stream());
+    }
+
+    private CompletableFuture<Stream<JiraIssue>> searchAsync(final String jql, final String requestedFields) {
+        final Function<Long, CompletableFuture<JiraIssues>> searchFrom = startAt -> {
+            final JiraIssues replayed = replay(jql, requestedFields, startAt);
+            return replayed != null ? CompletableFuture.completedFuture(replayed) : scheduler.executeAsync("search",
+                    () -> transport.get(searchUri(jql, requestedFields, startAt), headers),
+                    response -> readSearch(jql, requestedFields, startAt, response));
+        };
+        return searchFrom.apply(0L).thenCompose(first -> {
+            final List<CompletableFuture<JiraIssues>> pages = new ArrayList<>();
+            pages.add(CompletableFuture.completedFuture(first));
+            if (first.getMaxResults() > 0) {
+                for (long startAt = first.getStartAt() + first.getMaxResults(); startAt < first.getTotal(); startAt += first.getMaxResults()) {
+                    pages.add(searchFrom.apply(startAt));
+                }
             }
-            icon = "data:" + contentType + ";base64," + Base64.getEncoder().encodeToString(image.readEntity(byte[].class));
+            return CompletableFuture.allOf(pages.toArray(new CompletableFuture<?>[0]))
+                    .thenApply(done -> pages.stream()
+                            .map(CompletableFuture::join)
+                            .filter(i -> i.issues != null)
+                            .flatMap(i -> i.issues.stream()));
+        });
+    }
+
+    private String searchUri(final String jql, final String requestedFields, final long startAt) {
+        return baseUrl + "/rest/api/2/search?jql=" + encode(jql) + "&startAt=" + startAt + "&fields=" + encode(requestedFields)
+                + (pageSize > 0 ? "&maxResults=" + pageSize : "");
+    }
+
+    private JiraIssues readSearch(final String jql, final String requestedFields, final long startAt,
+                                  final HttpResponse response) {
+        final SearchJournal current = journal;
+        if (current == null) {
+            return reader.read(response.getBody());
+        }
+        final byte[] page = response.readBytes();
+        current.append(baseUrl, jql, requestedFields, startAt, page);
+        return reader.read(new ByteArrayInputStream(page));
+    }
+
+    private JiraIssues replay(final String jql, final String requestedFields, final long startAt) {
+        final SearchJournal current = journal;
+        final byte[] page = current == null ? null : current.get(baseUrl, jql, requestedFields, startAt);
+        if (page == null) {
+            return null;
+        }
+        getStats().count("resumed-pages", 1);
+        return reader.read(new ByteArrayInputStream(page));
+    }
+
+    private static String encode(final String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // the first page gives total and maxResults so all remaining offsets are known upfront,
+    // fetch them concurrently but keep the pages in order
+    private Stream<JiraIssues> paginate(final Function<Long, JiraIssues> searchFrom) {
+        final JiraIssues first = searchFrom.apply(0L);
+        if (first.getMaxResults() <= 0 || first.getTotal() <= first.getStartAt() + first.getMaxResults()) {
+            return Stream.of(first);
+        }
+        final List<CompletableFuture<JiraIssues>> pages = new ArrayList<>();
+        for (long startAt = first.getStartAt() + first.getMaxResults(); startAt < first.getTotal(); startAt += first.getMaxResults()) {
+            final long offset = startAt;
+            pages.add(CompletableFuture.supplyAsync(() -> searchFrom.apply(offset), pageExecutor));
         }
-        catch (Exception e){
-            System.err.println("Exception  : " + e.getMessage());
-            e.printStackTrace();
+        return Stream.concat(Stream.of(first), pages.stream().map(CompletableFuture::join));
+    }
+
+    /**
+     * @param uri the image to fetch.
+     * @param cached the previously fetched version if any, used to send a conditional request.
+     * @return the cached instance if not modified or the freshly fetched image.
+     */
+    public Icon getIcon(final String uri, final Icon cached) {
+        return scheduler.execute("avatar", () -> transport.get(uri, iconHeaders(cached)), image -> readIcon(uri, cached, image));
+    }
+
+    /**
+     * Asynchronous flavor of {@link #getIcon(String, Icon)}.
+     */
+    public CompletableFuture<Icon> getIconAsync(final String uri, final Icon cached) {
+        return scheduler.executeAsync("avatar", () -> transport.get(uri, iconHeaders(cached)),
+                image -> readIcon(uri, cached, image));
+    }
+
+    private Map<String, String> iconHeaders(final Icon cached) {
+        if (cached == null) {
+            return headers;
         }
+        final Map<String, String> conditional = new HashMap<>(headers);
+        if (cached.getEtag() != null) {
+            conditional.put("If-None-Match", cached.getEtag());
+        }
+        if (cached.getLastModified() != null) {
+            conditional.put("If-Modified-Since", cached.getLastModified());
+        }
+        return conditional;
+    }
 
+    private Icon readIcon(final String uri, final Icon cached, final HttpResponse image) {
+        if (cached != null && image.getStatus() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            return cached;
+        }
+        if (image.getStatus() != HttpURLConnection.HTTP_OK) {
+            throw new IllegalStateException("HTTP " + image.getStatus() + " for " + uri);
+        }
+        String contentType = image.getHeader("Content-Type");
+        if (contentType != null && contentType.contains(";")) {
+            contentType = contentType.substring(0, contentType.indexOf(';'));
+        }
+        if (contentType == null || contentType.trim().isEmpty()) {
+            contentType = "application/octet-stream";
+        }
+        final Icon icon = new Icon();
+        icon.setUrl(uri);
+        icon.setContentType(contentType);
+        icon.setEtag(image.getHeader("ETag"));
+        icon.setLastModified(image.getHeader("Last-Modified"));
+        final byte[] bytes = image.readBytes();
+        icon.setData(Base64.getEncoder().encodeToString(bytes));
         return icon;
     }
 
+    @Data
+    public static class Icon {
+
+        private String url;
+
+        private String contentType;
+
+        private String etag;
+
+        private String lastModified;
+
+        private String data;
+
+        public String toDataUri() {
+            return "data:" + contentType + ";base64," + data;
+        }
+    }
+
     @Data
     public static class JiraVersion {
 
@@ -0,0 +1,83 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.Data;
+
+/**
+ * An additional Jira server of a federated report, instances are read from the configuration using
+ * {@code instance.<name>.<attribute>} keys:
+ * <pre>
+ * instance.cloud.base-url = https://example.atlassian.net
+ * instance.cloud.username = me@example.com
+ * instance.cloud.password = base64:xxxxx
+ * instance.cloud.jql = project = CLOUD
+ * </pre>
+ * The credentials and the query default to the ones of the main instance.
+ */
+@Data
+public class JiraInstance {
+
+    private String name;
+
+    private String baseUrl;
+
+    private String username;
+
+    private String password;
+
+    private String jql;
+
+    /**
+     * @param configuration the configuration entries (see {@code ~/.jira-reporter.properties}).
+     * @param names the instances to load.
+     * @param username the default username.
+     * @param password the default password.
+     * @param jql the default query.
+     * @return the instances indexed by name, in the requested order.
+     */
+    public static Map<String, JiraInstance> load(final Map<String, String> configuration, final String[] names,
+                                                 final String username, final String password, final String jql) {
+        final Map<String, JiraInstance> instances = new LinkedHashMap<>();
+        if (names == null) {
+            return instances;
+        }
+        for (final String name : names) {
+            final String trimmed = name.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (trimmed.indexOf(Federation.SEPARATOR) >= 0) {
+                throw new IllegalArgumentException("Instance name can't contain '" + Federation.SEPARATOR + "': '" + trimmed + "'");
+            }
+            final String prefix = "instance." + trimmed + '.';
+            final JiraInstance instance = new JiraInstance();
+            instance.setName(trimmed);
+            instance.setBaseUrl(configuration.get(prefix + "base-url"));
+            if (instance.getBaseUrl() == null) {
+                throw new IllegalArgumentException("No " + prefix + "base-url configured");
+            }
+            instance.setUsername(configuration.getOrDefault(prefix + "username", username));
+            instance.setPassword(configuration.getOrDefault(prefix + "password", password));
+            instance.setJql(configuration.getOrDefault(prefix + "jql", jql));
+            instances.put(trimmed, instance);
+        }
+        return instances;
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static java.util.stream.Collectors.joining;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Rewrites the queries sent to the search endpoint: status exclusions are pushed to the server
+ * and id/key lists are split to fit in the URL.
+ */
+public class JqlPlanner {
+
+    private final int urlBudget;
+
+    /**
+     * @param urlBudget the maximum size of the (url encoded) jql parameter.
+     */
+    public JqlPlanner(final int urlBudget) {
+        this.urlBudget = urlBudget;
+    }
+
+    /**
+     * @param jql the user query.
+     * @param excludedStatuses the statuses to exclude.
+     * @return the query with a {@code status not in (...)} clause, the ordering clause is kept last.
+     */
+    public String excludeStatuses(final String jql, final String[] excludedStatuses) {
+        final String exclusion = statusClause(excludedStatuses);
+        if (exclusion.isEmpty()) {
+            return jql;
+        }
+        final String query = jql == null ? "" : jql.trim();
+        final int orderBy = findOrderBy(query);
+        final String filter = (orderBy < 0 ? query : query.substring(0, orderBy)).trim();
+        final String order = orderBy < 0 ? "" : ' ' + query.substring(orderBy).trim();
+        return (filter.isEmpty() ? exclusion : "(" + filter + ") AND " + exclusion) + order;
+    }
+
+    /**
+     * Splits a list of values in {@code field in (...)} queries fitting the url budget once the status
+     * exclusion is added. Duplicated values are merged.
+     *
+     * @param field the field to match ({@code id} or {@code key}).
+     * @param values the values to look up.
+     * @param excludedStatuses the statuses which will be excluded from the query.
+     * @param maxValues the maximum number of values per query.
+     * @return the queries to execute (without the status exclusion).
+     */
+    public List<String> planIn(final String field, final Collection<String> values, final String[] excludedStatuses,
+                               final int maxValues) {
+        final Set<String> distinct = new LinkedHashSet<>(values);
+        final String statusClause = statusClause(excludedStatuses);
+        final int overhead = encodedLength(field + " in ()" + (statusClause.isEmpty() ? "" : "() AND " + statusClause));
+        final int limit = Math.max(1, maxValues);
+
+        final List<String> queries = new ArrayList<>();
+        final List<String> current = new ArrayList<>();
+        int size = overhead;
+        for (final String value : distinct) {
+            final int valueSize = encodedLength(value) + (current.isEmpty() ? 0 : encodedLength(","));
+            if (!current.isEmpty() && (size + valueSize > urlBudget || current.size() >= limit)) {
+                queries.add(field + " in (" + String.join(",", current) + ")");
+                current.clear();
+                size = overhead;
+            }
+            current.add(value);
+            size += encodedLength(value) + (current.size() == 1 ? 0 : encodedLength(","));
+        }
+        if (!current.isEmpty()) {
+            queries.add(field + " in (" + String.join(",", current) + ")");
+        }
+        return queries;
+    }
+
+    private static String statusClause(final String[] excludedStatuses) {
+        if (excludedStatuses == null || excludedStatuses.length == 0) {
+            return "";
+        }
+        final String statuses = Stream.of(excludedStatuses)
+                .filter(it -> it != null && !it.trim().isEmpty())
+                .map(it -> '"' + it.trim().replace("\\", "\\\\").replace("\"", "\\\"") + '"')
+                .distinct()
+                .collect(joining(","));
+        return statuses.isEmpty() ? "" : "status not in (" + statuses + ")";
+    }
+
+    // last "order by" outside of a quoted string
+    private static int findOrderBy(final String jql) {
+        final String lower = jql.toLowerCase(Locale.ROOT);
+        char quote = 0;
+        int found = -1;
+        for (int i = 0; i < lower.length(); i++) {
+            final char c = lower.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (lower.startsWith("order", i) && (i == 0 || Character.isWhitespace(lower.charAt(i - 1)))) {
+                int next = i + "order".length();
+                while (next < lower.length() && Character.isWhitespace(lower.charAt(next))) {
+                    next++;
+                }
+                if (next > i + "order".length() && lower.startsWith("by", next)) {
+                    found = i;
+                }
+            }
+        }
+        return found;
+    }
+
+    private static int encodedLength(final String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8").length();
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static java.util.Optional.ofNullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import lombok.Data;
+
+/**
+ * A named report, definitions are read from a properties file using {@code <name>.<attribute>} keys:
+ * <pre>
+ * team-a.jql = labels = team-a
+ * team-a.title = Team A
+ * team-a.exclude-status = closed,done
+ * team-a.output = /tmp/team-a.html
+ * </pre>
+ */
+@Data
+public class ReportDefinition {
+
+    private String name;
+
+    private String jql;
+
+    private String title;
+
+    private String[] excludedStatuses;
+
+    private String output;
+
+    /**
+     * @param file the definitions.
+     * @param defaultExcludedStatuses the statuses to exclude when a report does not define it.
+     * @return the reports indexed by name.
+     */
+    public static Map<String, ReportDefinition> load(final Path file, final String[] defaultExcludedStatuses) {
+        final Properties properties = new Properties();
+        try (final Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final Map<String, ReportDefinition> reports = new TreeMap<>();
+        properties.stringPropertyNames().stream()
+                .filter(it -> it.endsWith(".jql"))
+                .forEach(key -> {
+                    final String name = key.substring(0, key.length() - ".jql".length());
+                    final ReportDefinition definition = new ReportDefinition();
+                    definition.setName(name);
+                    definition.setJql(properties.getProperty(key));
+                    definition.setTitle(properties.getProperty(name + ".title", name));
+                    definition.setExcludedStatuses(ofNullable(properties.getProperty(name + ".exclude-status"))
+                            .map(it -> Stream.of(it.split(",")).map(String::trim).filter(s -> !s.isEmpty())
+                                    .toArray(String[]::new))
+                            .orElse(ofNullable(defaultExcludedStatuses).orElseGet(() -> new String[0])));
+                    definition.setOutput(properties.getProperty(name + ".output"));
+                    reports.put(name, definition);
+                });
+        if (reports.isEmpty()) {
+            throw new IllegalArgumentException("No report defined in " + file + " (expected <name>.jql keys)");
+        }
+        return reports;
+    }
+}
@@ -0,0 +1,340 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static java.util.Optional.ofNullable;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fetches the issues of a query (and their dependencies) and builds the corresponding graph.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ReportGenerator {
+
+    // the fields a report renders: node labels and project avatars
+    public static final String FIELDS = "summary,project";
+
+    private final Jira jira;
+
+    private final DependencyCrawler crawler;
+
+    // null when the issues are not cached
+    private final IssueStore store;
+
+    private final IconCache iconCache;
+
+    // null when the layout is computed by the browser
+    private final ForceLayout layout;
+
+    private final boolean fullRefresh;
+
+    private final long reconcileInterval;
+
+    public Stats getStats() {
+        return jira.getStats();
+    }
+
+    public Cytoscape generate(final String jql, final String[] excludedStatuses) {
+        return build(fetch(jql, excludedStatuses));
+    }
+
+    /**
+     * @param jql the user query.
+     * @param excludedStatuses the statuses to ignore.
+     * @return the matching issues and their dependencies indexed by id.
+     */
+    public Map<String, Jira.JiraIssue> fetch(final String jql, final String[] excludedStatuses) {
+        if (store == null) {
+            return crawl(query(() -> jira.query(jql, excludedStatuses)), excludedStatuses);
+        }
+        synchronized (store) {
+            final Map<String, Jira.JiraIssue> issues = crawl(query(() -> store.sync(
+                    jira, jql, excludedStatuses, fullRefresh, reconcileInterval)), excludedStatuses);
+            jira.getStats().time("store", store::save);
+            return issues;
+        }
+    }
+
+    /**
+     * Fetches the issues of several reports at once: the ids matching each query are listed, the union is loaded
+     * and crawled once (with the statuses excluded by all reports) and each report then gets the part reachable
+     * from its own roots. The icons of all the issues are loaded once too.
+     *
+     * @param definitions the reports.
+     * @return the issues of each report indexed by report name.
+     */
+    public Map<String, Map<String, Jira.JiraIssue>> fetch(final Collection<ReportDefinition> definitions) {
+        final String[] commonExcludedStatuses = definitions.stream()
+                .map(it -> Stream.of(it.getExcludedStatuses()).map(s -> s.toLowerCase(Locale.ROOT)).collect(toSet()))
+                .reduce((a, b) -> {
+                    a.retainAll(b);
+                    return a;
+                })
+                .map(it -> it.toArray(new String[0]))
+                .orElseGet(() -> new String[0]);
+
+        final Map<String, List<Jira.JiraIssue>> roots = new HashMap<>();
+        final Map<String, Jira.JiraIssue> all;
+        if (store == null) {
+            jira.getStats().time("query", () -> {
+                final Map<String, List<String>> ids = new HashMap<>();
+                definitions.forEach(definition -> ids.put(definition.getName(),
+                        jira.queryIds(definition.getJql(), definition.getExcludedStatuses()).collect(toList())));
+                final Map<String, Jira.JiraIssue> loaded = crawler.fetch(
+                        ids.values().stream().flatMap(Collection::stream).distinct().collect(toList()), commonExcludedStatuses)
+                        .stream()
+                        .collect(toMap(Jira.JiraIssue::getId, identity(), (a, b) -> a));
+                definitions.forEach(definition -> roots.put(definition.getName(), ids.get(definition.getName()).stream()
+                        .map(loaded::get)
+                        .filter(Objects::nonNull)
+                        .filter(Jira.statusFilter(definition.getExcludedStatuses()))
+                        .collect(toList())));
+                jira.getStats().count("issues", loaded.size());
+            });
+            all = crawl(roots, commonExcludedStatuses);
+        } else {
+            synchronized (store) {
+                jira.getStats().time("query", () -> definitions.forEach(definition -> roots.put(definition.getName(),
+                        store.sync(jira, definition.getJql(), definition.getExcludedStatuses(), fullRefresh, reconcileInterval)
+                                .collect(toList()))));
+                all = crawl(roots, commonExcludedStatuses);
+                jira.getStats().time("store", store::save);
+            }
+        }
+
+        loadIcons(all.values());
+
+        final Map<String, Map<String, Jira.JiraIssue>> issues = new HashMap<>();
+        definitions.forEach(definition -> issues.put(definition.getName(), crawler.reachable(
+                all, roots.get(definition.getName()), definition.getExcludedStatuses())));
+        return issues;
+    }
+
+    /**
+     * Loads the icons of the issues in the icon cache, a later {@link #graph(Map)} does not request them anymore.
+     *
+     * @param issues the issues to load the icons of.
+     */
+    public void loadIcons(final Collection<Jira.JiraIssue> issues) {
+        jira.getStats().time("icons", () -> CompletableFuture.allOf(issues.stream()
+                .map(ReportGenerator::getIcon)
+                .filter(it -> !it.isEmpty())
+                .distinct()
+                .map(icon -> iconCache.getAsync(jira, icon))
+                .toArray(CompletableFuture<?>[]::new)).join());
+    }
+
+    public Cytoscape build(final Map<String, Jira.JiraIssue> issues) {
+        return layout(graph(issues));
+    }
+
+    /**
+     * Computes the node positions of the report when a server side layout is configured.
+     *
+     * @param cytoscape the report to lay out.
+     * @return the same report.
+     */
+    public Cytoscape layout(final Cytoscape cytoscape) {
+        if (layout != null) {
+            jira.getStats().time("layout", () -> cytoscape.setPositions(layout.layout(cytoscape.getGraph())));
+        }
+        return cytoscape;
+    }
+
+    /**
+     * Finds the cycles, the critical path of each fix version and the main blockers of the report,
+     * they are rendered as css classes ({@code cycle}, {@code critical}, {@code blocker}).
+     *
+     * @param cytoscape the report to analyze.
+     * @return the analysis.
+     */
+    public GraphAnalytics.Result analyze(final Cytoscape cytoscape) {
+        final Stats stats = jira.getStats();
+        final GraphAnalytics.Result analysis = stats.time("analytics", () -> GraphAnalytics.analyze(cytoscape.getGraph()));
+        cytoscape.addClasses(analysis.getNodeClasses(), analysis.getEdgeClasses());
+        stats.count("cycles", analysis.getCycles().size());
+        return analysis;
+    }
+
+    /**
+     * Replaces the graph of the report by its differences with a previous run, states are rendered as css classes.
+     *
+     * @param cytoscape the report of this run, not laid out yet.
+     * @param previous the graph of the previous run.
+     * @param deltaOnly should unchanged issues be dropped.
+     * @return the same report.
+     */
+    public Cytoscape diff(final Cytoscape cytoscape, final IssueGraph previous, final boolean deltaOnly) {
+        final Stats stats = jira.getStats();
+        final GraphDiff.Result diff = stats.time("diff", () -> GraphDiff.diff(previous, cytoscape.getGraph(), deltaOnly));
+        cytoscape.setGraph(diff.getGraph());
+        cytoscape.addClasses(classes(diff.getNodes()), classes(diff.getEdges()));
+        for (final GraphDiff.State state : GraphDiff.State.values()) {
+            final String name = state.name().toLowerCase(Locale.ROOT);
+            stats.count("diff." + name + ".nodes", diff.nodes(state));
+            stats.count("diff." + name + ".edges", diff.edges(state));
+        }
+        return cytoscape;
+    }
+
+    /**
+     * @param issues the issues to render.
+     * @param mode how to group the connected components.
+     * @return one report per partition (laid out independently) indexed by partition name.
+     */
+    public Map<String, Cytoscape> split(final Map<String, Jira.JiraIssue> issues, final GraphPartitioner.Mode mode) {
+        return split(graph(issues), mode);
+    }
+
+    /**
+     * @param whole the report to split, not laid out yet.
+     * @param mode how to group the connected components.
+     * @return one report per partition (laid out independently) indexed by partition name.
+     */
+    public Map<String, Cytoscape> split(final Cytoscape whole, final GraphPartitioner.Mode mode) {
+        final List<GraphPartitioner.Partition> partitions = jira.getStats().time("split",
+                () -> GraphPartitioner.partition(whole.getGraph(), mode));
+        jira.getStats().count("partitions", partitions.size());
+        final Map<String, Cytoscape> reports = new LinkedHashMap<>();
+        partitions.forEach(partition -> reports.put(partition.getName(), whole.subgraph(partition.getNodes())));
+        if (layout != null) {
+            jira.getStats().time("layout", () -> reports.values().parallelStream()
+                    .forEach(report -> report.setPositions(layout.layout(report.getGraph()))));
+        }
+        return reports;
+    }
+
+    /**
+     * @param issues the issues to render.
+     * @return the report of these issues without any layout.
+     */
+    public Cytoscape graph(final Map<String, Jira.JiraIssue> issues) {
+        return graph(issues, id -> jira);
+    }
+
+    /**
+     * @param issues the issues to render.
+     * @param clients the client of the instance owning an issue (by id), its icons are requested with it.
+     * @return the report of these issues without any layout.
+     */
+    public Cytoscape graph(final Map<String, Jira.JiraIssue> issues, final Function<String, Jira> clients) {
+        final Stats stats = jira.getStats();
+        final Cytoscape cytoscape = new Cytoscape();
+
+        // load icons (as few times as possible), each distinct image is embedded once in the report
+        final Map<String, String> projectIcons = stats.time("icons", () -> {
+            final Map<String, Jira> iconClients = new HashMap<>();
+            issues.values().forEach(issue -> iconClients.computeIfAbsent(getIcon(issue), icon -> clients.apply(issue.getId())));
+            final Map<String, CompletableFuture<String>> loading = iconClients.entrySet().stream()
+                    .collect(toMap(Map.Entry::getKey, e -> e.getKey().isEmpty() ?
+                            CompletableFuture.completedFuture("") : iconCache.getAsync(e.getValue(), e.getKey())));
+            return loading.entrySet().stream()
+                    .collect(toMap(Map.Entry::getKey, e -> e.getKey().isEmpty() ? "" : cytoscape.registerIcon(e.getValue().join())));
+        });
+
+        // build the graph, nodes first so links can be resolved to indices
+        stats.time("graph", () -> {
+            final IssueGraph.Builder graph = IssueGraph.builder();
+            issues.values().forEach(issue -> graph.addNode(
+                    issue.getId(), issue.getKey(), issue.getFields().getSummary(), projectIcons.get(getIcon(issue)),
+                    ofNullable(issue.getFields().getStatus()).map(Jira.Status::getName).orElse(null),
+                    ofNullable(issue.getFields().getFixVersions())
+                            .filter(versions -> !versions.isEmpty())
+                            .map(versions -> versions.stream().map(Jira.JiraVersion::getName).collect(joining(",")))
+                            .orElse(null)));
+            issues.values().forEach(issue -> ofNullable(issue.getFields().getIssuelinks()).ifPresent(links -> links.forEach(link -> {
+                final IssueGraph.LinkType type = IssueGraph.LinkType.of(link.getType() == null ? null : link.getType().getName());
+                if (link.getInwardIssue() != null) {
+                    graph.addEdge(link.getInwardIssue().getId(), issue.getId(), type);
+                }
+                if (link.getOutwardIssue() != null) {
+                    graph.addEdge(issue.getId(), link.getOutwardIssue().getId(), type);
+                }
+            })));
+            cytoscape.setGraph(graph.build());
+            cytoscape.setBaseUrl(jira.getBaseUrl());
+        });
+        stats.count("nodes", cytoscape.getGraph().nodeCount());
+        stats.count("edges", cytoscape.getGraph().edgeCount());
+        stats.count("icons", cytoscape.getIcons().size());
+        return cytoscape;
+    }
+
+    private List<Jira.JiraIssue> query(final Supplier<Stream<Jira.JiraIssue>> query) {
+        return jira.getStats().time("query", () -> {
+            final List<Jira.JiraIssue> roots = query.get().collect(toList());
+            jira.getStats().count("issues", roots.size());
+            return roots;
+        });
+    }
+
+    private Map<String, Jira.JiraIssue> crawl(final List<Jira.JiraIssue> roots, final String[] excludedStatuses) {
+        return jira.getStats().time("dependencies", () -> {
+            final Map<String, Jira.JiraIssue> issues = crawler.crawl(roots.stream(), excludedStatuses);
+            jira.getStats().count("dependencies", issues.size() - roots.size());
+            return issues;
+        });
+    }
+
+    private Map<String, Jira.JiraIssue> crawl(final Map<String, List<Jira.JiraIssue>> roots,
+                                              final String[] excludedStatuses) {
+        final List<Jira.JiraIssue> union = new ArrayList<>(roots.values().stream()
+                .flatMap(Collection::stream)
+                .collect(toMap(Jira.JiraIssue::getId, identity(), (a, b) -> a))
+                .values());
+        return crawl(union, excludedStatuses);
+    }
+
+    private static String[] classes(final GraphDiff.State[] states) {
+        final String[] classes = new String[states.length];
+        for (int i = 0; i < states.length; i++) {
+            classes[i] = states[i] == null ? null : states[i].name().toLowerCase(Locale.ROOT);
+        }
+        return classes;
+    }
+
+    private static String getIcon(final Jira.JiraIssue issue) {
+        final Jira.Project project = issue.getFields().getProject();
+        if (project == null || project.getAvatarUrls() == null) {
+            return "";
+        }
+        return ofNullable(project.getAvatarUrls().get("32x32")).orElseGet(() -> {
+            final Map<String, String> urls = project.getAvatarUrls();
+            return urls.isEmpty() ? "" : urls.values().iterator().next();
+        });
+    }
+}
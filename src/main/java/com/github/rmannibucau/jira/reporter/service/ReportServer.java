@@ -0,0 +1,216 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static java.util.stream.Collectors.joining;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Serves named reports over HTTP, reports are generated in background with a warm client and caches
+ * so a request only returns the last rendered version:
+ * <ul>
+ *     <li>{@code GET /}: the list of reports,</li>
+ *     <li>{@code GET /reports/<name>}: the report,</li>
+ *     <li>{@code POST /reports/<name>/refresh}: regenerates a report,</li>
+ *     <li>{@code GET /metrics}: the statistics of the client in prometheus format.</li>
+ * </ul>
+ */
+@Slf4j
+public class ReportServer implements AutoCloseable {
+
+    private final ReportGenerator generator;
+
+    private final Map<String, ReportDefinition> reports;
+
+    private final boolean pretty;
+
+    private final Map<String, Rendered> rendered = new ConcurrentHashMap<>();
+
+    // a single thread since the generator state (issue store) is shared
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(
+            new NamedThreadFactory("jira-reporter-refresh-"));
+
+    private final ExecutorService httpExecutor = Executors.newFixedThreadPool(
+            4, new NamedThreadFactory("jira-reporter-http-"));
+
+    private HttpServer server;
+
+    public ReportServer(final ReportGenerator generator, final Map<String, ReportDefinition> reports,
+                        final boolean pretty) {
+        this.generator = generator;
+        this.reports = reports;
+        this.pretty = pretty;
+    }
+
+    /**
+     * @param host the binding host.
+     * @param port the binding port, 0 for a random one.
+     * @param refreshInterval the delay (ms) between two refreshes of all reports, negative to only refresh on demand.
+     * @return the bound port.
+     */
+    public int start(final String host, final int port, final long refreshInterval) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.setExecutor(httpExecutor);
+        server.createContext("/", this::handle);
+        server.start();
+
+        if (refreshInterval > 0) {
+            refresher.scheduleWithFixedDelay(this::refreshAll, 0, refreshInterval, TimeUnit.MILLISECONDS);
+        } else {
+            refresher.execute(this::refreshAll);
+        }
+        final int boundPort = server.getAddress().getPort();
+        log.info("Serving {} reports on http://{}:{}", reports.size(), host, boundPort);
+        return boundPort;
+    }
+
+    public CompletableFuture<Void> refresh(final String name) {
+        final ReportDefinition definition = reports.get(name);
+        if (definition == null) {
+            throw new IllegalArgumentException("No report '" + name + "'");
+        }
+        return CompletableFuture.runAsync(() -> render(definition), refresher);
+    }
+
+    // waits for the running refresh since the caller closes the client right after
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+        refresher.shutdownNow();
+        httpExecutor.shutdownNow();
+        try {
+            if (!refresher.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.warn("A report is still being refreshed, stopping anyway");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void refreshAll() {
+        reports.values().forEach(this::render);
+    }
+
+    private void render(final ReportDefinition definition) {
+        final long start = System.currentTimeMillis();
+        try {
+            final ByteArrayOutputStream html = new ByteArrayOutputStream();
+            try (final Writer writer = new OutputStreamWriter(html, StandardCharsets.UTF_8)) {
+                generator.generate(definition.getJql(), definition.getExcludedStatuses())
+                        .write(definition.getTitle(), writer, pretty);
+            }
+            rendered.put(definition.getName(), new Rendered(html.toByteArray(), System.currentTimeMillis()));
+            log.info("Refreshed report '{}' in {}ms", definition.getName(), System.currentTimeMillis() - start);
+        } catch (final RuntimeException | IOException e) { // keep the previous version
+            log.error("Can't refresh report '" + definition.getName() + "'", e);
+        }
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            final String path = exchange.getRequestURI().getPath();
+            if ("/".equals(path)) {
+                send(exchange, 200, "text/html", index());
+                return;
+            }
+            if ("/metrics".equals(path)) {
+                send(exchange, 200, "text/plain", generator.getStats().toPrometheus().getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            if (!path.startsWith("/reports/")) {
+                send(exchange, 404, "text/plain", "Not found".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+
+            final String name = path.substring("/reports/".length());
+            if (name.endsWith("/refresh")) {
+                final String report = name.substring(0, name.length() - "/refresh".length());
+                if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                    send(exchange, 405, "text/plain", "Use POST".getBytes(StandardCharsets.UTF_8));
+                } else if (!reports.containsKey(report)) {
+                    send(exchange, 404, "text/plain", ("No report '" + report + "'").getBytes(StandardCharsets.UTF_8));
+                } else {
+                    refresh(report);
+                    send(exchange, 202, "text/plain", "Refresh scheduled".getBytes(StandardCharsets.UTF_8));
+                }
+                return;
+            }
+            if (!reports.containsKey(name)) {
+                send(exchange, 404, "text/plain", ("No report '" + name + "'").getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            final Rendered report = rendered.get(name);
+            if (report == null) {
+                exchange.getResponseHeaders().set("Retry-After", "5");
+                send(exchange, 503, "text/plain", "Report is being generated".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            exchange.getResponseHeaders().set("X-Report-Generated-At", Long.toString(report.getGeneratedAt()));
+            send(exchange, 200, "text/html", report.getHtml());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private byte[] index() {
+        return ("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=utf-8 />\n<title>Reports</title>\n</head>\n<body>\n<ul>\n"
+                + reports.values().stream()
+                        .map(it -> "<li><a href=\"reports/" + Html.encodePathSegment(it.getName()) + "\">"
+                                + Html.escape(it.getTitle()) + "</a>"
+                                + (rendered.containsKey(it.getName()) ? "" : " (generating)") + "</li>\n")
+                        .collect(joining())
+                + "</ul>\n</body>\n</html>\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void send(final HttpExchange exchange, final int status, final String contentType,
+                             final byte[] payload) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType + ";charset=utf-8");
+        exchange.sendResponseHeaders(status, payload.length);
+        try (final OutputStream stream = exchange.getResponseBody()) {
+            stream.write(payload);
+        }
+    }
+
+    @Value
+    private static class Rendered {
+
+        private byte[] html;
+
+        private long generatedAt;
+    }
+}
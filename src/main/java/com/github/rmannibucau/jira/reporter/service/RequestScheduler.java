@@ -0,0 +1,323 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Executes the (idempotent) GET requests of the client with an AIMD concurrency limit:
+ * the limit grows by one request per "round" while the server accepts the load and is halved
+ * when it throttles (429/503, 502/504 from an overloaded gateway or rate limit headers). Throttled and
+ * failed requests are retried with a jittered exponential backoff, {@code Retry-After} and
+ * {@code X-RateLimit-Reset} are honored.
+ * Requests waiting for a slot are queued, no thread is blocked while waiting.
+ */
+@Slf4j
+public class RequestScheduler implements AutoCloseable {
+
+    @Getter
+    private final int maxConcurrency;
+
+    private final int maxRetries;
+
+    private final long baseBackoff;
+
+    @Getter
+    private final Stats stats;
+
+    private double limit;
+
+    private int inFlight;
+
+    private long pausedUntil;
+
+    // asynchronous requests waiting for a slot
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+
+    private boolean drainScheduled;
+
+    // delays the asynchronous retries and the requests waiting for the end of a pause
+    private final ScheduledExecutorService timer =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("jira-reporter-scheduler-"));
+
+    /**
+     * @param maxConcurrency the maximum number of requests in flight.
+     * @param maxRetries how many times a request is retried.
+     * @param baseBackoff the first backoff (ms) when the server does not tell how long to wait.
+     * @param stats where to record the requests.
+     */
+    public RequestScheduler(final int maxConcurrency, final int maxRetries, final long baseBackoff, final Stats stats) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.maxRetries = Math.max(0, maxRetries);
+        this.baseBackoff = Math.max(1, baseBackoff);
+        this.limit = Math.min(4, this.maxConcurrency);
+        this.stats = stats;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Blocking flavor of {@link #executeAsync}.
+     *
+     * @param endpoint the name of the called endpoint for the statistics.
+     * @param request sends the request.
+     * @param handler reads a successful (2xx or 304) response, the response is closed after.
+     * @param <T> the result type.
+     * @return the handler result.
+     */
+    public <T> T execute(final String endpoint, final Supplier<CompletableFuture<HttpResponse>> request,
+                         final Function<HttpResponse, T> handler) {
+        try {
+            return executeAsync(endpoint, request, handler).join();
+        } catch (final CompletionException ce) {
+            if (ce.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ce.getCause();
+            }
+            throw ce;
+        }
+    }
+
+    /**
+     * No thread waits for a slot or a retry, requests are queued until the limit allows to send them.
+     *
+     * @param endpoint the name of the called endpoint for the statistics.
+     * @param request sends the request.
+     * @param handler reads a successful (2xx or 304) response, the response is closed after.
+     * @param <T> the result type.
+     * @return the handler result.
+     */
+    public <T> CompletableFuture<T> executeAsync(final String endpoint, final Supplier<CompletableFuture<HttpResponse>> request,
+                                                 final Function<HttpResponse, T> handler) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        submit(() -> attempt(endpoint, request, handler, result, 0));
+        return result;
+    }
+
+    private <T> void attempt(final String endpoint, final Supplier<CompletableFuture<HttpResponse>> request,
+                             final Function<HttpResponse, T> handler, final CompletableFuture<T> result, final int attempt) {
+        final long start = System.nanoTime();
+        CompletableFuture<HttpResponse> stage;
+        try {
+            stage = request.get();
+        } catch (final RuntimeException re) {
+            final CompletableFuture<HttpResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(re);
+            stage = failed;
+        }
+        stage.whenComplete((response, error) -> {
+            long retryIn = -1;
+            boolean throttled = false;
+            try {
+                if (error != null) {
+                    final Throwable cause = error instanceof CompletionException && error.getCause() != null ?
+                            error.getCause() : error;
+                    stats.request(endpoint, System.nanoTime() - start, 0);
+                    if (!(cause instanceof UncheckedIOException) || attempt >= maxRetries) { // only network issues are retried
+                        result.completeExceptionally(cause);
+                        return;
+                    }
+                    log.debug("Retrying after {}", cause.getMessage());
+                    retryIn = backoff(attempt);
+                    return;
+                }
+
+                final int status = response.getStatus();
+                if (isThrottled(status)) {
+                    stats.request(endpoint, System.nanoTime() - start, status);
+                    throttled = true;
+                    retryIn = Math.max(retryAfter(response), backoff(attempt));
+                    onThrottle(retryIn);
+                    response.close();
+                    if (attempt >= maxRetries) {
+                        retryIn = -1;
+                        result.completeExceptionally(new HttpException(status, "still throttled after " + attempt + " retries"));
+                        return;
+                    }
+                    log.debug("Throttled (HTTP {}), retrying in {}ms", status, retryIn);
+                    return;
+                }
+                throttled = observeRateLimit(response);
+                if (status >= 400) {
+                    stats.request(endpoint, System.nanoTime() - start, status);
+                    try {
+                        result.completeExceptionally(new HttpException(status, response.readString()));
+                    } catch (final RuntimeException re) {
+                        result.completeExceptionally(new HttpException(status, null));
+                    } finally {
+                        response.close();
+                    }
+                    return;
+                }
+                try {
+                    result.complete(handler.apply(response));
+                } catch (final RuntimeException re) {
+                    result.completeExceptionally(re);
+                } finally {
+                    response.close();
+                    stats.request(endpoint, System.nanoTime() - start, status);
+                    stats.received(endpoint, response.getReceivedBytes());
+                }
+            } finally {
+                release(throttled);
+                if (retryIn >= 0) {
+                    timer.schedule(() -> submit(() -> attempt(endpoint, request, handler, result, attempt + 1)),
+                            retryIn, TimeUnit.MILLISECONDS);
+                }
+            }
+        });
+    }
+
+    // runs the task now if a slot is free, queues it otherwise
+    private void submit(final Runnable task) {
+        synchronized (this) {
+            waiting.add(task);
+        }
+        drain();
+    }
+
+    private void drain() {
+        while (true) {
+            final Runnable next;
+            synchronized (this) {
+                final long pause = pausedUntil - System.currentTimeMillis();
+                if (pause > 0) {
+                    if (!waiting.isEmpty() && !drainScheduled) {
+                        drainScheduled = true;
+                        timer.schedule(() -> {
+                            synchronized (this) {
+                                drainScheduled = false;
+                            }
+                            drain();
+                        }, pause, TimeUnit.MILLISECONDS);
+                    }
+                    return;
+                }
+                if (waiting.isEmpty() || inFlight >= (int) limit) {
+                    return;
+                }
+                next = waiting.poll();
+                inFlight++;
+            }
+            next.run();
+        }
+    }
+
+    private void release(final boolean throttled) {
+        synchronized (this) {
+            inFlight--;
+            if (!throttled) {
+                limit = Math.min(maxConcurrency, limit + 1. / limit);
+            }
+        }
+        drain();
+    }
+
+    private synchronized void onThrottle(final long wait) {
+        limit = Math.max(1, limit / 2);
+        pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + wait);
+        log.debug("Concurrency limit decreased to {}", (int) limit);
+    }
+
+    // 502 and 504 come from a proxy in front of an overloaded instance, they are as transient as a 503
+    private static boolean isThrottled(final int status) {
+        return status == 429 || status == 502 || status == 503 || status == 504;
+    }
+
+    // X-RateLimit-Remaining/X-RateLimit-Reset/X-RateLimit-NearLimit, returns true if the server asks to slow down
+    private boolean observeRateLimit(final HttpResponse response) {
+        final String nearLimit = response.getHeader("X-RateLimit-NearLimit");
+        final String remaining = response.getHeader("X-RateLimit-Remaining");
+        if (remaining != null && remaining.trim().equals("0")) {
+            onThrottle(Math.max(0, parseDate(response.getHeader("X-RateLimit-Reset")) - System.currentTimeMillis()));
+            return true;
+        }
+        if (Boolean.parseBoolean(nearLimit)) {
+            onThrottle(0);
+            return true;
+        }
+        return false;
+    }
+
+    private long retryAfter(final HttpResponse response) {
+        final String retryAfter = response.getHeader("Retry-After");
+        if (retryAfter != null) {
+            try {
+                return Long.parseLong(retryAfter.trim()) * 1000;
+            } catch (final NumberFormatException nfe) {
+                return Math.max(0, parseDate(retryAfter) - System.currentTimeMillis());
+            }
+        }
+        return Math.max(0, parseDate(response.getHeader("X-RateLimit-Reset")) - System.currentTimeMillis());
+    }
+
+    // jittered exponential backoff: random(base * 2^attempt / 2, base * 2^attempt)
+    private long backoff(final int attempt) {
+        final long max = baseBackoff * (1L << Math.min(attempt, 10));
+        return ThreadLocalRandom.current().nextLong(max / 2, max + 1);
+    }
+
+    private static long parseDate(final String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return 0;
+        }
+        final String date = value.trim();
+        try {
+            return ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (final DateTimeParseException e) {
+            // try next format
+        }
+        try {
+            return OffsetDateTime.parse(date).toInstant().toEpochMilli();
+        } catch (final DateTimeParseException e) {
+            // try next format
+        }
+        try {
+            return Instant.parse(date).toEpochMilli();
+        } catch (final DateTimeParseException e) {
+            // try next format
+        }
+        try {
+            return Long.parseLong(date) * 1000;
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only journal of the search pages fetched during a run: each record is a length-prefixed
+ * (query hash, startAt, raw page) triple, the query hash covering the base url so the clients of several
+ * instances can share a journal. Replaying it lets an interrupted run skip all the pages
+ * it already fetched, roots and dependencies alike. A truncated last record (crash while appending) is dropped.
+ */
+@Slf4j
+public class SearchJournal implements AutoCloseable {
+
+    private static final int MAGIC = 0x4a524a31; // JRJ1
+
+    private static final int RECORD_HEADER = Integer.BYTES + 2 * Long.BYTES;
+
+    private final Path file;
+
+    private final FileChannel channel;
+
+    // replayed pages indexed by hash(base url, jql, fields, startAt)
+    private final Map<Long, byte[]> pages;
+
+    private SearchJournal(final Path file, final FileChannel channel, final Map<Long, byte[]> pages) {
+        this.file = file;
+        this.channel = channel;
+        this.pages = pages;
+    }
+
+    /**
+     * @param directory the cache directory.
+     * @param run what identifies a run (base url, queries, fields...).
+     * @return the journal file of this run.
+     */
+    public static Path file(final Path directory, final String... run) {
+        return directory.resolve("journal-" + Hashes.sha1(String.join("\n", run)) + ".bin");
+    }
+
+    /**
+     * @param file the journal.
+     * @param resume should the existing records be replayed, the journal is reset otherwise.
+     * @return a journal ready to append new pages.
+     */
+    public static SearchJournal open(final Path file, final boolean resume) {
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            final FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            final Map<Long, byte[]> pages = new HashMap<>();
+            long end = 0;
+            if (resume && channel.size() > Integer.BYTES) {
+                end = replay(channel, pages);
+                log.info("Resuming from {} journaled pages of {}", pages.size(), file);
+            }
+            if (end == 0) {
+                channel.truncate(0);
+                channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, MAGIC), 0);
+                end = Integer.BYTES;
+            } else {
+                channel.truncate(end);
+            }
+            channel.position(end);
+            return new SearchJournal(file, channel, pages);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the journaled page for this search if any.
+     */
+    public byte[] get(final String baseUrl, final String jql, final String fields, final long startAt) {
+        return pages.get(key(Hashes.hash64(baseUrl, jql, fields), startAt));
+    }
+
+    public synchronized void append(final String baseUrl, final String jql, final String fields, final long startAt,
+                                    final byte[] page) {
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + page.length);
+        record.putInt(page.length).putLong(Hashes.hash64(baseUrl, jql, fields)).putLong(startAt).put(page);
+        record.flip();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Removes the journal, to call once the run succeeded.
+     */
+    public void delete() {
+        close();
+        try {
+            Files.deleteIfExists(file);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // returns the end of the last complete record, 0 if the file is not a journal
+    private static long replay(final FileChannel channel, final Map<Long, byte[]> pages) throws IOException {
+        final ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (mapped.getInt() != MAGIC) {
+            return 0;
+        }
+        while (mapped.remaining() >= RECORD_HEADER) {
+            final int start = mapped.position();
+            final int length = mapped.getInt();
+            final long query = mapped.getLong();
+            final long startAt = mapped.getLong();
+            if (length < 0 || length > mapped.remaining()) {
+                mapped.position(start);
+                break;
+            }
+            final byte[] page = new byte[length];
+            mapped.get(page);
+            pages.put(key(query, startAt), page);
+        }
+        return mapped.position();
+    }
+
+    private static long key(final long query, final long startAt) {
+        return Hashes.hash64(Long.toString(query), Long.toString(startAt));
+    }
+}
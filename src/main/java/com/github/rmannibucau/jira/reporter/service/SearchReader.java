@@ -0,0 +1,392 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import javax.json.Json;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
+
+/**
+ * Reads a /search response with a pull parser, only the fields the report uses are materialized,
+ * everything else (other fields, avatar sizes, priorities, ...) is skipped without being bound.
+ * The values repeated across issues (projects, statuses, types, versions and the issues embedded in links)
+ * are interned so the memory grows with the distinct values and not with the number of issues and links,
+ * these values are shared and must not be mutated (see {@link Interner}).
+ */
+public class SearchReader {
+
+    private static final String ICON_SIZE = "32x32";
+
+    // per table, a reader lives as long as its client (a server process for instance)
+    private static final int INTERNER_CAPACITY = 1 << 20;
+
+    private final JsonParserFactory factory = Json.createParserFactory(null);
+
+    private final Set<String> fields;
+
+    private final Interner<Jira.Status> statuses = new Interner<>(INTERNER_CAPACITY);
+
+    private final Interner<Jira.IssueType> types = new Interner<>(INTERNER_CAPACITY);
+
+    private final Interner<Jira.Project> projects = new Interner<>(INTERNER_CAPACITY);
+
+    private final Interner<Jira.JiraVersion> versions = new Interner<>(INTERNER_CAPACITY);
+
+    private final Interner<Collection<Jira.JiraVersion>> versionLists = new Interner<>(INTERNER_CAPACITY);
+
+    // embedded issues only have an id, a key and a few fields, they repeat for each issue linking them
+    private final Interner<Jira.JiraIssue> embeddedIssues = new Interner<>(INTERNER_CAPACITY);
+
+    /**
+     * @param fields the fields to keep (comma separated), same value as the one sent to the search endpoint.
+     */
+    public SearchReader(final String fields) {
+        this.fields = new HashSet<>();
+        Stream.of(fields.split(",")).map(String::trim).filter(it -> !it.isEmpty()).forEach(this.fields::add);
+    }
+
+    public Jira.JiraIssues read(final InputStream stream) {
+        try (final JsonParser parser = factory.createParser(stream)) {
+            expect(parser, JsonParser.Event.START_OBJECT);
+            final Jira.JiraIssues issues = new Jira.JiraIssues();
+            while (parser.hasNext()) {
+                final JsonParser.Event event = parser.next();
+                if (event == JsonParser.Event.END_OBJECT) {
+                    break;
+                }
+                final String key = parser.getString();
+                switch (key) {
+                    case "startAt":
+                        issues.setStartAt(readLong(parser));
+                        break;
+                    case "maxResults":
+                        issues.setMaxResults(readLong(parser));
+                        break;
+                    case "total":
+                        issues.setTotal(readLong(parser));
+                        break;
+                    case "issues":
+                        issues.setIssues(readIssues(parser));
+                        break;
+                    default:
+                        skipValue(parser);
+                }
+            }
+            return issues;
+        }
+    }
+
+    private Collection<Jira.JiraIssue> readIssues(final JsonParser parser) {
+        final Collection<Jira.JiraIssue> issues = new ArrayList<>();
+        if (!isArray(parser)) { // null when nothing matches on some instances
+            return issues;
+        }
+        while (parser.next() == JsonParser.Event.START_OBJECT) {
+            issues.add(readIssue(parser, false));
+        }
+        return issues;
+    }
+
+    // embedded issues (links) only get a few fields and never their own links
+    private Jira.JiraIssue readIssue(final JsonParser parser, final boolean embedded) {
+        final Jira.JiraIssue issue = new Jira.JiraIssue();
+        while (parser.next() == JsonParser.Event.KEY_NAME) {
+            switch (parser.getString()) {
+                case "id":
+                    issue.setId(readString(parser));
+                    break;
+                case "key":
+                    issue.setKey(readString(parser));
+                    break;
+                case "fields":
+                    issue.setFields(readFields(parser, embedded));
+                    break;
+                default:
+                    skipValue(parser);
+            }
+        }
+        return embedded ? embeddedIssues.intern(issue) : issue;
+    }
+
+    private Jira.Fields readFields(final JsonParser parser, final boolean embedded) {
+        if (!isObject(parser)) {
+            return null;
+        }
+        final Jira.Fields result = new Jira.Fields();
+        while (parser.next() == JsonParser.Event.KEY_NAME) {
+            final String key = parser.getString();
+            if (!fields.contains(key)) {
+                skipValue(parser);
+                continue;
+            }
+            switch (key) {
+                case "summary":
+                    result.setSummary(readString(parser));
+                    break;
+                case "status":
+                    result.setStatus(readStatus(parser));
+                    break;
+                case "issuetype":
+                    result.setIssuetype(readIssueType(parser));
+                    break;
+                case "project":
+                    if (embedded) {
+                        skipValue(parser);
+                    } else {
+                        result.setProject(readProject(parser));
+                    }
+                    break;
+                case "fixVersions":
+                    if (embedded) {
+                        skipValue(parser);
+                    } else {
+                        result.setFixVersions(readVersions(parser));
+                    }
+                    break;
+                case "issuelinks":
+                    if (embedded) {
+                        skipValue(parser);
+                    } else {
+                        result.setIssuelinks(readLinks(parser));
+                    }
+                    break;
+                default:
+                    skipValue(parser);
+            }
+        }
+        return result;
+    }
+
+    private Jira.Status readStatus(final JsonParser parser) {
+        if (!isObject(parser)) {
+            return null;
+        }
+        final Jira.Status status = new Jira.Status();
+        while (parser.next() == JsonParser.Event.KEY_NAME) {
+            if ("name".equals(parser.getString())) {
+                status.setName(readString(parser));
+            } else {
+                skipValue(parser);
+            }
+        }
+        return statuses.intern(status);
+    }
+
+    private Jira.IssueType readIssueType(final JsonParser parser) {
+        if (!isObject(parser)) {
+            return null;
+        }
+        final Jira.IssueType type = new Jira.IssueType();
+        while (parser.next() == JsonParser.Event.KEY_NAME) {
+            switch (parser.getString()) {
+                case "name":
+                    type.setName(readString(parser));
+                    break;
+                case "inward":
+                    type.setInward(readString(parser));
+                    break;
+                case "outward":
+                    type.setOutward(readString(parser));
+                    break;
+                case "iconUrl":
+                    type.setIconUrl(readString(parser));
+                    break;
+                default:
+                    skipValue(parser);
+            }
+        }
+        return types.intern(type);
+    }
+
+    private Jira.Project readProject(final JsonParser parser) {
+        if (!isObject(parser)) {
+            return null;
+        }
+        final Jira.Project project = new Jira.Project();
+        while (parser.next() == JsonParser.Event.KEY_NAME) {
+            switch (parser.getString()) {
+                case "key":
+                    project.setKey(readString(parser));
+                    break;
+                case "avatarUrls":
+                    project.setAvatarUrls(readAvatar(parser));
+                    break;
+                default:
+                    skipValue(parser);
+            }
+        }
+        return projects.intern(project);
+    }
+
+    // only keep the avatar used by the report (32x32 or the first one as fallback)
+    private Map<String, String> readAvatar(final JsonParser parser) {
+        final Map<String, String> avatars = new TreeMap<>();
+        if (!isObject(parser)) {
+            return avatars;
+        }
+        while (parser.next() == JsonParser.Event.KEY_NAME) {
+            final String size = parser.getString();
+            final String url = readString(parser);
+            if (ICON_SIZE.equals(size) || avatars.isEmpty()) {
+                avatars.clear();
+                avatars.put(size, url);
+            }
+        }
+        return avatars;
+    }
+
+    private Collection<Jira.JiraVersion> readVersions(final JsonParser parser) {
+        final Collection<Jira.JiraVersion> versions = new ArrayList<>();
+        if (!isArray(parser)) {
+            return versions;
+        }
+        while (parser.next() == JsonParser.Event.START_OBJECT) {
+            final Jira.JiraVersion version = new Jira.JiraVersion();
+            while (parser.next() == JsonParser.Event.KEY_NAME) {
+                switch (parser.getString()) {
+                    case "id":
+                        version.setId(readString(parser));
+                        break;
+                    case "name":
+                        version.setName(readString(parser));
+                        break;
+                    case "released":
+                        version.setReleased(parser.next() == JsonParser.Event.VALUE_TRUE);
+                        break;
+                    case "archived":
+                        version.setArchived(parser.next() == JsonParser.Event.VALUE_TRUE);
+                        break;
+                    case "projectId":
+                        version.setProjectId(readLong(parser));
+                        break;
+                    default:
+                        skipValue(parser);
+                }
+            }
+            versions.add(this.versions.intern(version));
+        }
+        return versionLists.intern(versions);
+    }
+
+    private Collection<Jira.IssueLinks> readLinks(final JsonParser parser) {
+        final Collection<Jira.IssueLinks> links = new ArrayList<>();
+        if (!isArray(parser)) {
+            return links;
+        }
+        while (parser.next() == JsonParser.Event.START_OBJECT) {
+            final Jira.IssueLinks link = new Jira.IssueLinks();
+            while (parser.next() == JsonParser.Event.KEY_NAME) {
+                switch (parser.getString()) {
+                    case "id":
+                        link.setId(readString(parser));
+                        break;
+                    case "type":
+                        link.setType(readIssueType(parser));
+                        break;
+                    case "inwardIssue":
+                        link.setInwardIssue(isObject(parser) ? readIssue(parser, true) : null);
+                        break;
+                    case "outwardIssue":
+                        link.setOutwardIssue(isObject(parser) ? readIssue(parser, true) : null);
+                        break;
+                    default:
+                        skipValue(parser);
+                }
+            }
+            links.add(link);
+        }
+        return links;
+    }
+
+    private static boolean isObject(final JsonParser parser) {
+        return isStructure(parser, JsonParser.Event.START_OBJECT);
+    }
+
+    private static boolean isArray(final JsonParser parser) {
+        return isStructure(parser, JsonParser.Event.START_ARRAY);
+    }
+
+    // consumes the next value if it is not the expected structure (null for instance)
+    private static boolean isStructure(final JsonParser parser, final JsonParser.Event expected) {
+        final JsonParser.Event event = parser.next();
+        if (event == expected) {
+            return true;
+        }
+        if (event == JsonParser.Event.START_OBJECT || event == JsonParser.Event.START_ARRAY) {
+            skip(parser);
+        }
+        return false;
+    }
+
+    private static String readString(final JsonParser parser) {
+        switch (parser.next()) {
+            case VALUE_STRING:
+            case VALUE_NUMBER:
+                return parser.getString();
+            case START_OBJECT:
+            case START_ARRAY:
+                skip(parser);
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private static long readLong(final JsonParser parser) {
+        return parser.next() == JsonParser.Event.VALUE_NUMBER ? parser.getLong() : 0;
+    }
+
+    private static void skipValue(final JsonParser parser) {
+        final JsonParser.Event event = parser.next();
+        if (event == JsonParser.Event.START_OBJECT || event == JsonParser.Event.START_ARRAY) {
+            skip(parser);
+        }
+    }
+
+    // skips the current structure, the start event was already consumed
+    private static void skip(final JsonParser parser) {
+        int depth = 1;
+        while (depth > 0) {
+            switch (parser.next()) {
+                case START_OBJECT:
+                case START_ARRAY:
+                    depth++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    depth--;
+                    break;
+                default:
+            }
+        }
+    }
+
+    private static void expect(final JsonParser parser, final JsonParser.Event expected) {
+        final JsonParser.Event event = parser.next();
+        if (event != expected) {
+            throw new IllegalStateException("Expected " + expected + " but got " + event);
+        }
+    }
+}
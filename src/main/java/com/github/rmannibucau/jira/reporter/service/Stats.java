@@ -0,0 +1,245 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
+
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * Collects the metrics of a run: phase durations, HTTP requests per endpoint (count, received bytes,
+ * latency histogram) and counters (issues, nodes, edges...). All methods are thread safe.
+ */
+public class Stats {
+
+    // latency buckets upper bounds in ms, the last bucket is +Inf
+    private static final long[] BUCKETS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    // prepended to the phase names of a scope, empty for the root
+    private final String prefix;
+
+    private final ConcurrentMap<String, LongAdder> phases;
+
+    private final ConcurrentMap<String, Endpoint> endpoints;
+
+    private final ConcurrentMap<String, LongAdder> counters;
+
+    public Stats() {
+        this("", new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+    }
+
+    private Stats(final String prefix, final ConcurrentMap<String, LongAdder> phases,
+                  final ConcurrentMap<String, Endpoint> endpoints, final ConcurrentMap<String, LongAdder> counters) {
+        this.prefix = prefix;
+        this.phases = phases;
+        this.endpoints = endpoints;
+        this.counters = counters;
+    }
+
+    /**
+     * Phases running concurrently (one per federated instance for instance) can't share a name since their
+     * durations would be summed, a scope records them as {@code <name>:<phase>}. Requests and counters
+     * are still aggregated with the ones of this instance.
+     *
+     * @param name the scope name.
+     * @return a view sharing the metrics of this instance.
+     */
+    public Stats scope(final String name) {
+        return new Stats(prefix + name + ':', phases, endpoints, counters);
+    }
+
+    /**
+     * @param name the phase name.
+     * @param task the code of the phase, its duration is added to the phase even if it fails.
+     * @return the result of the task.
+     */
+    public <T, E extends Exception> T time(final String name, final Task<T, E> task) throws E {
+        final long start = System.nanoTime();
+        try {
+            return task.run();
+        } finally {
+            phases.computeIfAbsent(prefix + name, k -> new LongAdder()).add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Flavor of {@link #time(String, Task)} for a task without result.
+     */
+    public <E extends Exception> void time(final String name, final Action<E> action) throws E {
+        time(name, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public void count(final String name, final long value) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).add(value);
+    }
+
+    public void request(final String endpoint, final long durationNanos, final int status) {
+        endpoints.computeIfAbsent(endpoint, k -> new Endpoint()).request(durationNanos, status);
+    }
+
+    public void received(final String endpoint, final long bytes) {
+        endpoints.computeIfAbsent(endpoint, k -> new Endpoint()).bytes.add(bytes);
+    }
+
+    public void print(final PrintStream out) {
+        out.println("Phases:");
+        new TreeMap<>(phases).forEach((name, duration) -> out.printf(Locale.ROOT, "  %-15s %10.3fs%n",
+                name, duration.sum() / 1e9));
+        out.println("HTTP:");
+        new TreeMap<>(endpoints).forEach((name, endpoint) -> out.printf(Locale.ROOT,
+                "  %-15s %6d requests, %6d errors, %10d bytes, avg %7.1fms, p50 <= %s, p99 <= %s%n",
+                name, endpoint.count.sum(), endpoint.errors.sum(), endpoint.bytes.sum(),
+                endpoint.count.sum() == 0 ? 0. : endpoint.durationNanos.sum() / 1e6 / endpoint.count.sum(),
+                endpoint.percentile(.5), endpoint.percentile(.99)));
+        out.println("Counters:");
+        new TreeMap<>(counters).forEach((name, value) -> out.printf(Locale.ROOT, "  %-15s %10d%n", name, value.sum()));
+    }
+
+    public void writeJson(final Writer writer, final boolean pretty) {
+        final JsonGenerator generator = Json.createGeneratorFactory(pretty ?
+                singletonMap(JsonGenerator.PRETTY_PRINTING, true) : emptyMap()).createGenerator(writer);
+        generator.writeStartObject();
+        generator.writeStartObject("phases");
+        new TreeMap<>(phases).forEach((name, duration) -> generator.write(name, duration.sum() / 1e9));
+        generator.writeEnd();
+        generator.writeStartObject("http");
+        new TreeMap<>(endpoints).forEach((name, endpoint) -> {
+            generator.writeStartObject(name)
+                    .write("requests", endpoint.count.sum())
+                    .write("errors", endpoint.errors.sum())
+                    .write("bytes", endpoint.bytes.sum())
+                    .write("durationSeconds", endpoint.durationNanos.sum() / 1e9);
+            generator.writeStartObject("histogram");
+            for (int i = 0; i < endpoint.histogram.length(); i++) {
+                generator.write(bucketName(i), endpoint.histogram.get(i));
+            }
+            generator.writeEnd().writeEnd();
+        });
+        generator.writeEnd();
+        generator.writeStartObject("counters");
+        new TreeMap<>(counters).forEach((name, value) -> generator.write(name, value.sum()));
+        generator.writeEnd();
+        generator.writeEnd();
+        generator.close();
+    }
+
+    public String toPrometheus() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("# TYPE jira_reporter_phase_seconds gauge\n");
+        new TreeMap<>(phases).forEach((name, duration) -> builder.append("jira_reporter_phase_seconds{phase=\"")
+                .append(name).append("\"} ").append(duration.sum() / 1e9).append('\n'));
+        builder.append("# TYPE jira_reporter_http_requests_total counter\n");
+        new TreeMap<>(endpoints).forEach((name, endpoint) -> builder.append("jira_reporter_http_requests_total{endpoint=\"")
+                .append(name).append("\"} ").append(endpoint.count.sum()).append('\n'));
+        builder.append("# TYPE jira_reporter_http_errors_total counter\n");
+        new TreeMap<>(endpoints).forEach((name, endpoint) -> builder.append("jira_reporter_http_errors_total{endpoint=\"")
+                .append(name).append("\"} ").append(endpoint.errors.sum()).append('\n'));
+        builder.append("# TYPE jira_reporter_http_received_bytes_total counter\n");
+        new TreeMap<>(endpoints).forEach((name, endpoint) -> builder.append("jira_reporter_http_received_bytes_total{endpoint=\"")
+                .append(name).append("\"} ").append(endpoint.bytes.sum()).append('\n'));
+        builder.append("# TYPE jira_reporter_http_request_duration_seconds histogram\n");
+        new TreeMap<>(endpoints).forEach((name, endpoint) -> {
+            long cumulated = 0;
+            for (int i = 0; i < endpoint.histogram.length(); i++) {
+                cumulated += endpoint.histogram.get(i);
+                builder.append("jira_reporter_http_request_duration_seconds_bucket{endpoint=\"").append(name)
+                        .append("\",le=\"").append(i < BUCKETS.length ? Double.toString(BUCKETS[i] / 1000.) : "+Inf")
+                        .append("\"} ").append(cumulated).append('\n');
+            }
+            builder.append("jira_reporter_http_request_duration_seconds_sum{endpoint=\"").append(name).append("\"} ")
+                    .append(endpoint.durationNanos.sum() / 1e9).append('\n');
+            builder.append("jira_reporter_http_request_duration_seconds_count{endpoint=\"").append(name).append("\"} ")
+                    .append(endpoint.count.sum()).append('\n');
+        });
+        builder.append("# TYPE jira_reporter_count gauge\n");
+        new TreeMap<>(counters).forEach((name, value) -> builder.append("jira_reporter_count{name=\"")
+                .append(name).append("\"} ").append(value.sum()).append('\n'));
+        return builder.toString();
+    }
+
+    private static String bucketName(final int index) {
+        return index < BUCKETS.length ? "le" + BUCKETS[index] + "ms" : "inf";
+    }
+
+    public interface Task<T, E extends Exception> {
+
+        T run() throws E;
+    }
+
+    public interface Action<E extends Exception> {
+
+        void run() throws E;
+    }
+
+    private static class Endpoint {
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder errors = new LongAdder();
+
+        private final LongAdder bytes = new LongAdder();
+
+        private final LongAdder durationNanos = new LongAdder();
+
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS.length + 1);
+
+        private void request(final long duration, final int status) {
+            count.increment();
+            if (status < 200 || status >= 400) {
+                errors.increment();
+            }
+            durationNanos.add(duration);
+            final long millis = TimeUnit.NANOSECONDS.toMillis(duration);
+            int bucket = 0;
+            while (bucket < BUCKETS.length && millis > BUCKETS[bucket]) {
+                bucket++;
+            }
+            histogram.incrementAndGet(bucket);
+        }
+
+        // upper bound of the bucket containing the percentile
+        private String percentile(final double percentile) {
+            final long total = count.sum();
+            if (total == 0) {
+                return "-";
+            }
+            long cumulated = 0;
+            for (int i = 0; i < histogram.length(); i++) {
+                cumulated += histogram.get(i);
+                if (cumulated >= Math.ceil(total * percentile)) {
+                    return i < BUCKETS.length ? BUCKETS[i] + "ms" : "+Inf";
+                }
+            }
+            return "+Inf";
+        }
+    }
+}
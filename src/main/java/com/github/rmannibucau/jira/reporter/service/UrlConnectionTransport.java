@@ -0,0 +1,69 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Lean transport on top of {@link HttpURLConnection}, it avoids the JAX-RS stack initialization
+ * which is significant for a short command line run. Connections are kept alive by the JDK when the
+ * response is fully read and closed.
+ */
+class UrlConnectionTransport implements HttpTransport {
+
+    private final int connectTimeout;
+
+    private final int readTimeout;
+
+    private final ExecutorService executor;
+
+    UrlConnectionTransport(final long connectTimeout, final long readTimeout, final int maxConnections) {
+        this.connectTimeout = (int) Math.min(Integer.MAX_VALUE, connectTimeout);
+        this.readTimeout = (int) Math.min(Integer.MAX_VALUE, readTimeout);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, maxConnections), new NamedThreadFactory("jira-reporter-io-"));
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> get(final String uri, final Map<String, String> headers) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                final HttpURLConnection connection = (HttpURLConnection) new URL(uri).openConnection();
+                connection.setConnectTimeout(connectTimeout);
+                connection.setReadTimeout(readTimeout);
+                connection.setUseCaches(false);
+                headers.forEach(connection::setRequestProperty);
+                final int status = connection.getResponseCode();
+                final InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+                return new HttpResponse(status, connection::getHeaderField, body);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CytoscapeTest {
+
+    private static final String INJECTION = "</script><script>alert('x')</script> \u2028 <!--";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void elementsCannotEndTheScript() throws IOException {
+        final IssueGraph.Builder builder = IssueGraph.builder();
+        builder.addNode("1", "CORE-1", INJECTION, null, "Open", null);
+        builder.addNode("2", "CORE-2", "safe", null, "Open", null);
+        builder.addEdge("1", "2", IssueGraph.LinkType.BLOCKS);
+        final Cytoscape cytoscape = new Cytoscape();
+        cytoscape.setGraph(builder.build());
+        cytoscape.registerIcon("data:image/png';alert(1)//;base64,AAAA");
+
+        final StringWriter page = new StringWriter();
+        cytoscape.write("</title><script>", page, false);
+        final String html = page.toString();
+        assertFalse(html, html.contains("<script>alert"));
+        assertFalse(html, html.contains("';alert(1)"));
+        assertFalse(html, html.contains("<!--"));
+        assertFalse(html, html.contains("\u2028"));
+        assertTrue(html, html.contains("textContent = this.data('name')"));
+        assertFalse(html, html.contains("innerHTML"));
+
+        // the escaped elements are still valid json giving back the summary
+        final int start = html.indexOf("var elements = \n") + "var elements = \n".length();
+        final String elements = html.substring(start, html.indexOf(";\n", start));
+        try (final JsonReader reader = Json.createReader(new StringReader(elements))) {
+            final JsonObject json = reader.readObject();
+            assertEquals(INJECTION, json.getJsonArray("nodes").getJsonObject(0).getJsonObject("data").getString("summary"));
+            assertEquals(1, json.getJsonArray("edges").size());
+        }
+    }
+
+    @Test
+    public void chunksAreCompleteJsonLines() throws IOException {
+        final int nodes = 1000;
+        final Random random = new Random(1234);
+        final IssueGraph.Builder builder = IssueGraph.builder();
+        for (int i = 0; i < nodes; i++) {
+            builder.addNode(Integer.toString(i), "CORE-" + i, "line\nbreak \u2028 " + INJECTION + ' ' + i, null,
+                    "Open", null);
+        }
+        final Set<String> expectedEdges = new HashSet<>();
+        for (int i = 0; i < nodes * 3; i++) {
+            final int source = random.nextInt(nodes);
+            final int target = random.nextInt(nodes);
+            final IssueGraph.LinkType type = IssueGraph.LinkType.values()[random.nextInt(5)];
+            builder.addEdge(source, target, type);
+        }
+        final IssueGraph graph = builder.build();
+        graph.forEachEdge((source, target, type) ->
+                expectedEdges.add(source + ">" + target + ">" + type.name().toLowerCase(Locale.ROOT)));
+        assertEquals(graph.edgeCount(), expectedEdges.size());
+        final Cytoscape cytoscape = new Cytoscape();
+        cytoscape.setGraph(graph);
+
+        final Path page = folder.getRoot().toPath().resolve("report.html");
+        cytoscape.writeChunked("report", page, 7); // a previous run with more chunks
+        cytoscape.writeChunked("report", page, 100);
+        final String html = new String(Files.readAllBytes(page), StandardCharsets.UTF_8);
+
+        final List<Path> chunks = new ArrayList<>();
+        try (final Stream<Path> files = Files.list(page.resolveSibling("report-elements"))) {
+            files.forEach(chunks::add);
+        }
+        // the chunks of the previous run were deleted
+        assertTrue(chunks.size() <= nodes / 100 + graph.edgeCount() / 100 + 1);
+
+        final Set<String> ids = new HashSet<>();
+        final Set<String> edges = new HashSet<>();
+        for (final Path chunk : chunks) {
+            assertTrue(html, html.contains("report-elements/" + chunk.getFileName()));
+            final List<String> lines = Files.readAllLines(chunk, StandardCharsets.UTF_8);
+            final boolean nodeChunk = chunk.getFileName().toString().startsWith("nodes-");
+            if (nodeChunk) {
+                assertTrue(lines.size() <= 100);
+            }
+            for (final String line : lines) {
+                final JsonObject element;
+                try (final JsonReader reader = Json.createReader(new StringReader(line))) {
+                    element = reader.readObject(); // fails if a line holds a partial or several elements
+                }
+                final JsonObject data = element.getJsonObject("data");
+                if (nodeChunk) {
+                    assertEquals("nodes", element.getString("group"));
+                    assertTrue(data.getString("summary").startsWith("line\nbreak \u2028 " + INJECTION));
+                    assertTrue(line, ids.add(data.getString("id")));
+                } else {
+                    assertEquals("edges", element.getString("group"));
+                    assertTrue(line, edges.add(data.getString("source") + '>' + data.getString("target")
+                            + '>' + data.getString("type")));
+                }
+            }
+        }
+        assertEquals(nodes, ids.size());
+        assertEquals(expectedEdges, edges);
+    }
+}
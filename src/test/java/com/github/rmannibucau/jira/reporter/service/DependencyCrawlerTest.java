@@ -0,0 +1,111 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.rmannibucau.jira.reporter.stub.StubJiraRule;
+import com.github.rmannibucau.jira.reporter.stub.SyntheticIssues;
+
+public class DependencyCrawlerTest {
+
+    private static final int ROOTS = 5;
+
+    @Rule
+    public final StubJiraRule stub = new StubJiraRule(1000, ROOTS);
+
+    private List<Jira.JiraIssue> issues;
+
+    private Jira jira;
+
+    @Before
+    public void start() {
+        issues = stub.getIssues();
+        jira = stub.client();
+    }
+
+    @Test
+    public void crawl() {
+        final Map<String, Jira.JiraIssue> crawled = crawl(new DependencyCrawler(jira, -1, -1, 50));
+        assertEquals(SyntheticIssues.reachable(issues, ROOTS), crawled.keySet());
+        // each issue is requested once even if several issues link it (cycles, shared dependencies)
+        assertEquals(crawled.size(), stub.getStub().getServed().sum());
+    }
+
+    @Test
+    public void excludedStatusesAreNotCrawled() {
+        final String[] excluded = {"Closed", "Done"};
+        final Map<String, Jira.JiraIssue> crawled = new DependencyCrawler(jira, -1, -1, 50)
+                .crawl(jira.query("project = CORE", excluded), excluded);
+        final Set<String> expected = SyntheticIssues.reachable(issues, ROOTS, excluded);
+        assertTrue(expected.size() < SyntheticIssues.reachable(issues, ROOTS).size());
+        assertEquals(expected, crawled.keySet());
+        assertEquals(crawled.size(), stub.getStub().getServed().sum());
+    }
+
+    @Test
+    public void maxDepth() {
+        final Map<String, Jira.JiraIssue> crawled = crawl(new DependencyCrawler(jira, 1, -1, 50));
+        final Set<String> expected = new HashSet<>();
+        issues.stream().limit(ROOTS).forEach(issue -> {
+            expected.add(issue.getId());
+            issue.getFields().getIssuelinks().forEach(link -> expected.add(
+                    (link.getInwardIssue() != null ? link.getInwardIssue() : link.getOutwardIssue()).getId()));
+        });
+        assertEquals(expected, crawled.keySet());
+    }
+
+    @Test
+    public void maxIssues() {
+        final Map<String, Jira.JiraIssue> crawled = crawl(new DependencyCrawler(jira, -1, 100, 50));
+        assertEquals(100, crawled.size());
+        assertTrue(SyntheticIssues.reachable(issues, ROOTS).containsAll(crawled.keySet()));
+    }
+
+    @Test
+    public void shallowExpansionReusesTheLinks() {
+        final Map<String, Jira.JiraIssue> full = crawl(new DependencyCrawler(jira, 1, -1, 50));
+        final long fullSearches = stub.getStub().getSearches().sum();
+        stub.getStub().getSearches().reset();
+
+        final Map<String, Jira.JiraIssue> shallow = crawl(new DependencyCrawler(jira, 1, -1, 50, true));
+        assertEquals(full.keySet(), shallow.keySet());
+        assertEquals(1, stub.getStub().getSearches().sum());
+        assertTrue(fullSearches > 1);
+        shallow.values().forEach(issue -> assertEquals(
+                full.get(issue.getId()).getFields().getStatus().getName(), issue.getFields().getStatus().getName()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shallowExpansionRequiresEmbeddedFields() {
+        new DependencyCrawler(stub.client(100, Jira.fields(Jira.DEFAULT_FIELDS, GraphAnalytics.FIELDS), Jira.DEFAULT_URL_BUDGET, 1),
+                1, -1, 50, true);
+    }
+
+    private Map<String, Jira.JiraIssue> crawl(final DependencyCrawler crawler) {
+        return crawler.crawl(jira.query("project = CORE", new String[0]), new String[0]);
+    }
+}
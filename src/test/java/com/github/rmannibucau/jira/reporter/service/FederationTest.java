@@ -0,0 +1,121 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.rmannibucau.jira.reporter.stub.StubJiraRule;
+
+public class FederationTest {
+
+    private static final int ROOTS = 5;
+
+    private static final Pattern AVATAR_REQUESTS = Pattern.compile("jira_reporter_http_requests_total\\{endpoint=\"avatar\"} (\\d+)");
+
+    @Rule
+    public final StubJiraRule localJira = new StubJiraRule(200, ROOTS, 1234, true);
+
+    @Rule
+    public final StubJiraRule remoteJira = new StubJiraRule(200, ROOTS, 5678, true);
+
+    private Jira local;
+
+    private Jira remote;
+
+    private IconCache localIcons;
+
+    private IconCache remoteIcons;
+
+    private Federation federation;
+
+    @Before
+    public void start() {
+        local = localJira.client();
+        remote = remoteJira.client();
+        localIcons = new IconCache(null);
+        remoteIcons = new IconCache(null);
+        final JiraInstance instance = new JiraInstance();
+        instance.setName("remote");
+        instance.setBaseUrl(remote.getBaseUrl());
+        instance.setJql("project = CORE");
+        federation = new Federation();
+        federation.add(instance, remote, generator(remote, remoteIcons));
+    }
+
+    @After
+    public void stop() {
+        federation.close();
+        localIcons.close();
+        remoteIcons.close();
+    }
+
+    @Test
+    public void fetch() {
+        final ReportGenerator generator = generator(local, localIcons);
+        for (int i = 0; i < 2; i++) { // the executor outlives a fetch
+            final Map<String, Jira.JiraIssue> issues = federation.fetch(
+                    () -> generator.fetch("project = CORE", new String[0]), new String[0]);
+            final long remotes = issues.keySet().stream().filter(id -> id.startsWith("remote" + Federation.SEPARATOR)).count();
+            assertEquals(remoteJira.getStub().getServed().sum(), remotes);
+            assertEquals(localJira.getStub().getServed().sum(), issues.size() - remotes);
+            localJira.getStub().getServed().reset();
+            remoteJira.getStub().getServed().reset();
+        }
+    }
+
+    @Test
+    public void client() {
+        assertSame(remote, federation.client("remote" + Federation.SEPARATOR + "100000", local));
+        assertSame(local, federation.client("100000", local));
+        assertSame(local, federation.client("missing" + Federation.SEPARATOR + "100000", local));
+    }
+
+    @Test
+    public void iconsAreLoadedByTheirInstance() {
+        final ReportGenerator generator = generator(local, localIcons);
+        final Map<String, Jira.JiraIssue> issues = federation.fetch(
+                () -> generator.fetch("project = CORE", new String[0]), new String[0]);
+        // the remote icons are prefetched by the remote generator
+        final long remoteRequests = avatarRequests(remote);
+        assertTrue(remoteRequests > 0);
+        assertEquals(0, avatarRequests(local));
+
+        // the report icon cache does not know them yet, they are requested with the remote client
+        generator.graph(issues, id -> federation.client(id, local));
+        assertEquals(remoteRequests, avatarRequests(local)); // both instances use the same projects
+        assertEquals(2 * remoteRequests, avatarRequests(remote));
+    }
+
+    private static long avatarRequests(final Jira jira) {
+        final Matcher matcher = AVATAR_REQUESTS.matcher(jira.getStats().toPrometheus());
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+
+    private static ReportGenerator generator(final Jira jira, final IconCache icons) {
+        return new ReportGenerator(jira, new DependencyCrawler(jira, -1, -1, 50), null, icons, null, false, Long.MAX_VALUE);
+    }
+}
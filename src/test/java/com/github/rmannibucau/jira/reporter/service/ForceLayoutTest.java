@@ -0,0 +1,92 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ForceLayoutTest {
+
+    @Test
+    public void sameSeedSameLayout() {
+        // more nodes than a repulsion task handles to fork several tasks
+        final IssueGraph graph = randomGraph(2000, 3);
+        final double[] first = new ForceLayout(20, 1234).layout(graph);
+        assertFinite(first);
+        assertArrayEquals(first, new ForceLayout(20, 1234).layout(graph), 0);
+        assertFalse(Arrays.equals(first, new ForceLayout(20, 4321).layout(graph)));
+    }
+
+    @Test
+    public void emptyAndSingleNode() {
+        assertEquals(0, new ForceLayout(10, 1).layout(IssueGraph.builder().build()).length);
+
+        final double[] single = new ForceLayout(10, 1).layout(randomGraph(1, 0));
+        assertEquals(2, single.length);
+        assertFinite(single);
+        assertArrayEquals(single, new ForceLayout(10, 1).layout(randomGraph(1, 0)), 0);
+    }
+
+    @Test
+    public void coincidentNodes() {
+        final IssueGraph graph = randomGraph(500, 2);
+        final double[] positions = new ForceLayout(50, 1).layout(graph, new double[graph.nodeCount() * 2]);
+        assertFinite(positions);
+    }
+
+    @Test
+    public void someCoincidentNodes() {
+        final IssueGraph graph = randomGraph(500, 2);
+        final double[] initial = new double[graph.nodeCount() * 2];
+        final Random random = new Random(1);
+        for (int i = 0; i < initial.length; i += 2) {
+            if (i % 4 == 0) { // half of the nodes at the same place
+                initial[i] = 10;
+                initial[i + 1] = -10;
+            } else {
+                initial[i] = (random.nextDouble() - .5) * 1000;
+                initial[i + 1] = (random.nextDouble() - .5) * 1000;
+            }
+        }
+        final double[] positions = new ForceLayout(50, 1).layout(graph, initial);
+        assertFinite(positions);
+    }
+
+    private static void assertFinite(final double[] positions) {
+        for (int i = 0; i < positions.length; i++) {
+            assertTrue(i + " = " + positions[i], Double.isFinite(positions[i]));
+        }
+    }
+
+    private static IssueGraph randomGraph(final int nodes, final int links) {
+        final Random random = new Random(nodes);
+        final IssueGraph.Builder builder = IssueGraph.builder();
+        for (int i = 0; i < nodes; i++) {
+            builder.addNode(Integer.toString(i), "CORE-" + i, null, null, "Open", null);
+        }
+        for (int i = 0; i < nodes * links; i++) {
+            builder.addEdge(random.nextInt(nodes), random.nextInt(nodes), IssueGraph.LinkType.BLOCKS);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GraphAnalyticsTest {
+
+    @Test
+    public void knownGraph() {
+        // 0 -> 1 -> 2 -> 3 and 1 -> 4 (1.0), 5 <-> 6 -> 7 (2.0), 3 relates to 8
+        final IssueGraph.Builder builder = IssueGraph.builder();
+        for (int i = 0; i < 9; i++) {
+            builder.addNode(Integer.toString(i), "CORE-" + i, "issue " + i, null, "Open", i < 5 ? "1.0" : (i < 8 ? "2.0" : null));
+        }
+        blocks(builder, 0, 1);
+        blocks(builder, 1, 2);
+        blocks(builder, 2, 3);
+        blocks(builder, 1, 4);
+        blocks(builder, 5, 6);
+        blocks(builder, 6, 5);
+        blocks(builder, 6, 7);
+        builder.addEdge("3", "8", IssueGraph.LinkType.RELATES);
+        final IssueGraph graph = builder.build();
+
+        final GraphAnalytics.Result result = GraphAnalytics.analyze(graph);
+        assertEquals(1, result.getCycles().size());
+        assertArrayEquals(new int[]{5, 6}, sorted(result.getCycles().get(0)));
+
+        assertEquals(2, result.getCriticalPaths().size());
+        assertEquals("1.0", result.getCriticalPaths().get(0).getFixVersion());
+        assertArrayEquals(new int[]{0, 1, 2, 3}, result.getCriticalPaths().get(0).getNodes());
+        // the links inside a cycle are not part of a path
+        assertEquals("2.0", result.getCriticalPaths().get(1).getFixVersion());
+        assertEquals(2, result.getCriticalPaths().get(1).getNodes().length);
+        assertEquals(7, result.getCriticalPaths().get(1).getNodes()[1]);
+
+        assertArrayEquals(new int[]{4, 3, 1, 0, 0, 2, 2, 0, 0}, result.getBlocked());
+        assertEquals(0, result.getBlockers()[0]);
+        assertEquals(1, result.getBlockers()[1]);
+
+        assertEquals("cycle blocker", result.getNodeClasses()[5]);
+        assertEquals(null, result.getNodeClasses()[8]);
+        assertEquals("cycle", result.getEdgeClasses()[graph.edgeIndex(5, 0)]);
+        assertTrue(result.getNodeClasses()[0], result.getNodeClasses()[0].contains("critical"));
+        assertTrue(result.getNodeClasses()[0], result.getNodeClasses()[0].contains("blocker"));
+        assertEquals("critical", result.getEdgeClasses()[graph.findEdge(2, 3)]);
+        assertEquals(null, result.getEdgeClasses()[graph.findEdge(3, 8)]);
+    }
+
+    @Test
+    public void blockedCountsMatchABreadthFirstSearch() {
+        final Random random = new Random(1234);
+        for (int run = 0; run < 20; run++) {
+            // enough blocking sources to need several 64 bits batches, cycles, self links and other link types
+            final int nodes = 50 + random.nextInt(300);
+            final IssueGraph.Builder builder = IssueGraph.builder();
+            for (int i = 0; i < nodes; i++) {
+                builder.addNode(Integer.toString(i), "CORE-" + i, null, null, "Open", null);
+            }
+            final int edges = nodes * (1 + random.nextInt(3));
+            for (int e = 0; e < edges; e++) {
+                final int source = random.nextInt(nodes);
+                // mostly forward links so the graph is not a single component
+                final int target = random.nextInt(10) == 0 ? random.nextInt(nodes) : Math.min(nodes - 1, source + random.nextInt(20));
+                builder.addEdge(Integer.toString(source), Integer.toString(target),
+                        random.nextInt(4) == 0 ? IssueGraph.LinkType.RELATES : IssueGraph.LinkType.BLOCKS);
+            }
+            final IssueGraph graph = builder.build();
+            final GraphAnalytics.Result result = GraphAnalytics.analyze(graph);
+
+            final boolean[] inCycle = new boolean[nodes];
+            result.getCycles().forEach(cycle -> Arrays.stream(cycle).forEach(node -> inCycle[node] = true));
+            for (int node = 0; node < nodes; node++) {
+                final boolean[] reached = reachable(graph, node);
+                int count = 0;
+                for (int other = 0; other < nodes; other++) {
+                    if (reached[other] && other != node) {
+                        count++;
+                    }
+                }
+                assertEquals("run " + run + ", node " + node, count, result.getBlocked()[node]);
+                // a node is in a cycle when it blocks itself
+                assertEquals("run " + run + ", node " + node, reached[node], inCycle[node]);
+            }
+        }
+    }
+
+    // nodes reachable through at least one blocking link
+    private static boolean[] reachable(final IssueGraph graph, final int from) {
+        final boolean[] reached = new boolean[graph.nodeCount()];
+        final Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            final int node = queue.poll();
+            for (int i = 0; i < graph.outDegree(node); i++) {
+                final int target = graph.target(node, i);
+                if (graph.type(node, i) == IssueGraph.LinkType.BLOCKS && !reached[target]) {
+                    reached[target] = true;
+                    queue.add(target);
+                }
+            }
+        }
+        return reached;
+    }
+
+    private static void blocks(final IssueGraph.Builder builder, final int source, final int target) {
+        builder.addEdge(Integer.toString(source), Integer.toString(target), IssueGraph.LinkType.BLOCKS);
+    }
+
+    private static int[] sorted(final int[] nodes) {
+        final int[] copy = nodes.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+}
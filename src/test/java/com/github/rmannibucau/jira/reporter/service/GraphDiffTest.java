@@ -0,0 +1,143 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class GraphDiffTest {
+
+    @Test
+    public void classification() {
+        final GraphDiff.Result result = GraphDiff.diff(previous(), current(), false);
+        final IssueGraph graph = result.getGraph();
+        assertEquals(5, graph.nodeCount()); // 1, 2, 4, 5 and the removed 3
+        assertEquals(5, graph.edgeCount()); // 1 -> 2, 2 -> 4, 5 -> 1 and the removed 2 -> 3, 1 -> 3
+
+        assertNull(nodeState(result, "1"));
+        assertNull(nodeState(result, "5"));
+        assertEquals(GraphDiff.State.CHANGED, nodeState(result, "2"));
+        assertEquals(GraphDiff.State.REMOVED, nodeState(result, "3"));
+        assertEquals(GraphDiff.State.ADDED, nodeState(result, "4"));
+        assertEquals(1, result.nodes(GraphDiff.State.ADDED));
+        assertEquals(1, result.nodes(GraphDiff.State.CHANGED));
+        assertEquals(1, result.nodes(GraphDiff.State.REMOVED));
+
+        assertNull(edgeState(result, "5", "1"));
+        assertEquals(GraphDiff.State.CHANGED, edgeState(result, "1", "2"));
+        assertEquals(GraphDiff.State.ADDED, edgeState(result, "2", "4"));
+        assertEquals(GraphDiff.State.REMOVED, edgeState(result, "2", "3"));
+        assertEquals(GraphDiff.State.REMOVED, edgeState(result, "1", "3"));
+        assertEquals(1, result.edges(GraphDiff.State.ADDED));
+        assertEquals(1, result.edges(GraphDiff.State.CHANGED));
+        assertEquals(2, result.edges(GraphDiff.State.REMOVED));
+
+        // the removed issue keeps its last known attributes
+        final int removed = graph.indexOf("3");
+        assertEquals("CORE-3", graph.key(removed));
+        assertEquals("Open", graph.status(removed));
+    }
+
+    @Test
+    public void eachAttributeIsCompared() {
+        final String[][] changes = {
+                {"CORE-1", "issue 1", "Open", "1.0"},
+                {"CORE-X", "issue 1", "Open", "1.0"},
+                {"CORE-1", "other", "Open", "1.0"},
+                {"CORE-1", "issue 1", "Closed", "1.0"},
+                {"CORE-1", "issue 1", "Open", "2.0"},
+                {"CORE-1", null, "Open", "1.0"}
+        };
+        final IssueGraph previous = single(changes[0]);
+        for (int i = 0; i < changes.length; i++) {
+            final GraphDiff.Result result = GraphDiff.diff(previous, single(changes[i]), false);
+            assertEquals(i == 0 ? null : GraphDiff.State.CHANGED, result.getNodes()[0]);
+        }
+    }
+
+    @Test
+    public void deltaOnly() {
+        final GraphDiff.Result result = GraphDiff.diff(previous(), current(), true);
+        final IssueGraph graph = result.getGraph();
+        // 5 and its unchanged link are dropped, 1 stays as an end of changed links
+        assertEquals(4, graph.nodeCount());
+        assertEquals(-1, graph.indexOf("5"));
+        assertNull(nodeState(result, "1"));
+        assertEquals(4, graph.edgeCount());
+        assertEquals(GraphDiff.State.CHANGED, edgeState(result, "1", "2"));
+        assertEquals(GraphDiff.State.REMOVED, edgeState(result, "1", "3"));
+    }
+
+    @Test
+    public void identicalGraphs() {
+        final GraphDiff.Result result = GraphDiff.diff(previous(), previous(), true);
+        assertEquals(0, result.getGraph().nodeCount());
+        for (final GraphDiff.State state : GraphDiff.State.values()) {
+            assertEquals(0, result.nodes(state));
+            assertEquals(0, result.edges(state));
+        }
+    }
+
+    // 1 -> 2 -> 3, 1 relates to 3, 5 -> 1
+    private static IssueGraph previous() {
+        final IssueGraph.Builder builder = IssueGraph.builder();
+        for (final String id : new String[]{"1", "2", "3", "5"}) {
+            builder.addNode(id, "CORE-" + id, "issue " + id, null, "Open", "1.0");
+        }
+        builder.addEdge("1", "2", IssueGraph.LinkType.BLOCKS);
+        builder.addEdge("2", "3", IssueGraph.LinkType.BLOCKS);
+        builder.addEdge("1", "3", IssueGraph.LinkType.RELATES);
+        builder.addEdge("5", "1", IssueGraph.LinkType.BLOCKS);
+        return builder.build();
+    }
+
+    // 3 is gone, 2 got a new summary, 4 is new, 1 now relates to 2, 2 -> 4
+    private static IssueGraph current() {
+        final IssueGraph.Builder builder = IssueGraph.builder();
+        builder.addNode("1", "CORE-1", "issue 1", null, "Open", "1.0");
+        builder.addNode("2", "CORE-2", "renamed", null, "Open", "1.0");
+        builder.addNode("4", "CORE-4", "issue 4", null, "Open", "1.0");
+        builder.addNode("5", "CORE-5", "issue 5", null, "Open", "1.0");
+        builder.addEdge("1", "2", IssueGraph.LinkType.RELATES);
+        builder.addEdge("2", "4", IssueGraph.LinkType.BLOCKS);
+        builder.addEdge("5", "1", IssueGraph.LinkType.BLOCKS);
+        return builder.build();
+    }
+
+    private static IssueGraph single(final String[] attributes) {
+        final IssueGraph.Builder builder = IssueGraph.builder();
+        builder.addNode("1", attributes[0], attributes[1], null, attributes[2], attributes[3]);
+        return builder.build();
+    }
+
+    private static GraphDiff.State nodeState(final GraphDiff.Result result, final String id) {
+        return result.getNodes()[result.getGraph().indexOf(id)];
+    }
+
+    private static GraphDiff.State edgeState(final GraphDiff.Result result, final String source, final String target) {
+        final IssueGraph graph = result.getGraph();
+        final int node = graph.indexOf(source);
+        final int other = graph.indexOf(target);
+        for (int i = 0; i < graph.outDegree(node); i++) {
+            if (graph.target(node, i) == other) {
+                return result.getEdges()[graph.edgeIndex(node, i)];
+            }
+        }
+        throw new IllegalArgumentException("No link " + source + " -> " + target);
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class GraphPartitionerTest {
+
+    @Test
+    public void components() {
+        final List<GraphPartitioner.Partition> partitions = GraphPartitioner.partition(graph(), GraphPartitioner.Mode.COMPONENT);
+        assertEquals(asList("component-1", "component-2", GraphPartitioner.UNLINKED),
+                partitions.stream().map(GraphPartitioner.Partition::getName).collect(toList()));
+        assertEquals(3, partitions.get(0).getNodes().length);
+        assertEquals(2, partitions.get(2).getNodes().length);
+    }
+
+    @Test
+    public void projects() {
+        final List<GraphPartitioner.Partition> partitions = GraphPartitioner.partition(graph(), GraphPartitioner.Mode.PROJECT);
+        // the issues without project prefix are not mixed with the unlinked issues of the other modes
+        assertEquals(asList("CORE", "WEB", GraphPartitioner.NO_PROJECT),
+                partitions.stream().map(GraphPartitioner.Partition::getName).sorted().collect(toList()));
+    }
+
+    @Test
+    public void fileNames() {
+        final Map<String, String> files = GraphPartitioner.fileNames(asList("CORE", "core", "../etc", "a/b", "a_b", "index", ""));
+        assertEquals("CORE.html", files.get("CORE"));
+        assertEquals("core-2.html", files.get("core"));
+        assertEquals("___etc.html", files.get("../etc"));
+        assertEquals("a_b.html", files.get("a/b"));
+        assertEquals("a_b-2.html", files.get("a_b"));
+        assertEquals("index-2.html", files.get("index"));
+        assertEquals("partition.html", files.get(""));
+    }
+
+    // CORE-1 -> CORE-2 -> WEB-1, WEB-2 -> WEB-3, and two unlinked issues: CORE-3 and one without project prefix
+    private static IssueGraph graph() {
+        final IssueGraph.Builder builder = IssueGraph.builder();
+        for (final String key : asList("CORE-1", "CORE-2", "WEB-1", "WEB-2", "WEB-3", "CORE-3", "ORPHAN")) {
+            builder.addNode(key, key, key, null, "Open", null);
+        }
+        builder.addEdge("CORE-1", "CORE-2", IssueGraph.LinkType.BLOCKS);
+        builder.addEdge("CORE-2", "WEB-1", IssueGraph.LinkType.BLOCKS);
+        builder.addEdge("WEB-2", "WEB-3", IssueGraph.LinkType.BLOCKS);
+        return builder.build();
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GraphSnapshotTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip() throws IOException {
+        final IssueGraph.Builder builder = IssueGraph.builder();
+        builder.addNode("10", "CORE-10", "caf\u00e9 <script>", "data:image/png;base64,AAAA", "Open", "1.0,2.0");
+        builder.addNode("11", "CORE-11", null, null, null, null);
+        builder.addNode("12", "CORE-12", "", null, "Closed", "");
+        int node = 0;
+        for (final IssueGraph.LinkType type : IssueGraph.LinkType.values()) {
+            builder.addEdge(node % 3, (node + 1) % 3, type);
+            node++;
+        }
+        final IssueGraph graph = builder.build();
+
+        final Path file = folder.getRoot().toPath().resolve("nested/snapshot.jrs");
+        GraphSnapshot.write(graph, file);
+        assertEquals(1, Files.list(file.getParent()).count()); // no temporary file left
+        final IssueGraph read = GraphSnapshot.read(file);
+
+        assertEquals(graph.nodeCount(), read.nodeCount());
+        assertEquals(graph.edgeCount(), read.edgeCount());
+        for (int i = 0; i < graph.nodeCount(); i++) {
+            assertEquals(graph.id(i), read.id(i));
+            assertEquals(graph.key(i), read.key(i));
+            assertEquals(graph.summary(i), read.summary(i));
+            assertEquals(graph.status(i), read.status(i));
+            assertEquals(graph.fixVersions(i), read.fixVersions(i));
+            assertNull(read.icon(i)); // not persisted
+            assertEquals(graph.outDegree(i), read.outDegree(i));
+            for (int j = 0; j < graph.outDegree(i); j++) {
+                assertEquals(graph.target(i, j), read.target(i, j));
+                assertEquals(graph.type(i, j), read.type(i, j));
+            }
+        }
+
+        // a rewrite replaces the previous snapshot
+        GraphSnapshot.write(IssueGraph.builder().build(), file);
+        assertEquals(0, GraphSnapshot.read(file).nodeCount());
+    }
+
+    @Test
+    public void notASnapshot() throws IOException {
+        assertRejected(gzip(out -> out.writeUTF("hello")), "is not a report snapshot");
+    }
+
+    @Test
+    public void unsupportedVersion() throws IOException {
+        assertRejected(gzip(out -> {
+            out.writeInt(0x4a525331);
+            out.writeInt(2);
+        }), "Unsupported snapshot version 2");
+    }
+
+    @Test
+    public void notGzipped() throws IOException {
+        final Path file = folder.newFile().toPath();
+        Files.write(file, "not a snapshot".getBytes("UTF-8"));
+        assertRejected(file, "is truncated or corrupted");
+    }
+
+    @Test
+    public void truncated() throws IOException {
+        final IssueGraph.Builder builder = IssueGraph.builder();
+        for (int i = 0; i < 100; i++) {
+            builder.addNode(Integer.toString(i), "CORE-" + i, "issue " + i, null, "Open", null);
+        }
+        final Path file = folder.getRoot().toPath().resolve("snapshot.jrs");
+        GraphSnapshot.write(builder.build(), file);
+        final byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+        assertRejected(file, "is truncated or corrupted");
+    }
+
+    @Test
+    public void corruptedStringLength() throws IOException {
+        assertRejected(gzip(out -> {
+            header(out, 1);
+            out.writeInt(Integer.MAX_VALUE);
+        }), "is corrupted");
+    }
+
+    @Test
+    public void corruptedLink() throws IOException {
+        assertRejected(gzip(out -> {
+            header(out, 1);
+            for (int i = 0; i < 5; i++) {
+                out.writeInt(-1);
+            }
+            out.writeInt(1);
+            out.writeInt(0);
+            out.writeInt(1); // only one node
+            out.writeByte(0);
+        }), "is corrupted");
+        assertRejected(gzip(out -> {
+            header(out, 0);
+            out.writeInt(1);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeByte(IssueGraph.LinkType.values().length);
+        }), "is corrupted");
+    }
+
+    private static void header(final DataOutputStream out, final int nodes) throws IOException {
+        out.writeInt(0x4a525331);
+        out.writeInt(1);
+        out.writeInt(nodes);
+    }
+
+    private Path gzip(final Content content) throws IOException {
+        final Path file = folder.newFile().toPath();
+        try (final DataOutputStream out = new DataOutputStream(new GZIPOutputStream(Files.newOutputStream(file)))) {
+            content.write(out);
+        }
+        return file;
+    }
+
+    private static void assertRejected(final Path file, final String message) {
+        try {
+            GraphSnapshot.read(file);
+            fail("should have been rejected");
+        } catch (final IllegalArgumentException iae) {
+            assertTrue(iae.getMessage(), iae.getMessage().contains(message));
+        }
+    }
+
+    private interface Content {
+
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.rmannibucau.jira.reporter.stub.StubJiraRule;
+
+public class IconCacheTest {
+
+    @Rule
+    public final StubJiraRule stub = new StubJiraRule(10, 1);
+
+    private Jira jira;
+
+    private String avatar;
+
+    @Before
+    public void start() {
+        jira = stub.client();
+        avatar = stub.getBase() + "/secure/projectavatar?pid=1";
+    }
+
+    @Test
+    public void memoryEntriesAreUsedUntilTheTtl() {
+        try (final IconCache cache = new IconCache(null, Long.MAX_VALUE)) {
+            final String icon = cache.get(jira, avatar);
+            assertTrue(icon, icon.startsWith("data:image/png;base64,"));
+            assertEquals(icon, cache.get(jira, avatar));
+            assertEquals(1, stub.getStub().getAvatars().sum());
+        }
+    }
+
+    @Test
+    public void memoryEntriesAreRevalidatedAfterTheTtl() {
+        try (final IconCache cache = new IconCache(null, 0)) {
+            final String icon = cache.get(jira, avatar);
+            assertEquals(icon, cache.get(jira, avatar));
+            assertEquals(icon, cache.get(jira, avatar));
+            assertEquals(3, stub.getStub().getAvatars().sum());
+            assertEquals(2, stub.getStub().getNotModified().sum());
+        }
+    }
+
+    @Test
+    public void failedRevalidationKeepsTheLoadedIcon() throws Exception {
+        try (final IconCache cache = new IconCache(null, 0)) {
+            final String icon = cache.get(jira, avatar);
+            stub.getStub().close();
+            assertEquals(icon, cache.get(jira, avatar));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class InternerTest {
+
+    @Test
+    public void canonicalInstance() {
+        final Interner<String> interner = new Interner<>(10);
+        final String value = new String("Open");
+        assertSame(value, interner.intern(value));
+        assertSame(value, interner.intern(new String("Open")));
+    }
+
+    @Test
+    public void evictsTheOldestEntriesOnly() {
+        final Interner<String> interner = new Interner<>(3);
+        final String[] values = new String[5];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new String("value-" + i);
+            interner.intern(values[i]);
+        }
+        // the two oldest values were evicted, the other ones are still shared
+        for (int i = 2; i < values.length; i++) {
+            assertSame(values[i], interner.intern(new String("value-" + i)));
+        }
+        assertNotSame(values[0], interner.intern(new String("value-0")));
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class IssueGraphTest {
+
+    @Test
+    public void builtGraphIsNotAffectedByTheBuilder() {
+        final IssueGraph.Builder builder = IssueGraph.builder();
+        builder.addNode("1", "CORE-1", "first", null, "Open", null);
+        builder.addNode("2", "CORE-2", "second", null, "Open", null);
+        builder.addEdge("1", "2", IssueGraph.LinkType.BLOCKS);
+        final IssueGraph first = builder.build();
+
+        builder.addNode("3", "CORE-3", "third", null, "Open", null);
+        builder.addEdge("2", "3", IssueGraph.LinkType.BLOCKS);
+        final IssueGraph second = builder.build();
+
+        assertEquals(2, first.nodeCount());
+        assertEquals(1, first.edgeCount());
+        assertEquals(-1, first.indexOf("3"));
+        assertEquals(1, first.indexOf("2"));
+        assertEquals(3, second.nodeCount());
+        assertEquals(2, second.indexOf("3"));
+    }
+}
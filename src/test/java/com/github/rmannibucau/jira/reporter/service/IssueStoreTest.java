@@ -0,0 +1,108 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static java.util.stream.Collectors.toSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.rmannibucau.jira.reporter.stub.StubJiraRule;
+
+public class IssueStoreTest {
+
+    private static final int ROOTS = 50;
+
+    private static final String[] EXCLUDED = {"Done", "Closed"};
+
+    @Rule
+    public final StubJiraRule stub = new StubJiraRule(200, ROOTS);
+
+    private Jira jira;
+
+    private IssueStore store;
+
+    @Before
+    public void start() {
+        jira = stub.client();
+        store = IssueStore.inMemory(stub.getBase(), jira.getFields());
+    }
+
+    @Test
+    public void excludedIssuesAreNotDownloaded() {
+        final Set<String> ids = sync(EXCLUDED, Long.MAX_VALUE);
+        assertEquals(expected(), ids);
+        assertEquals(ids.size(), stub.getStub().getServed().sum());
+    }
+
+    @Test
+    public void issuesMovedToAnExcludedStatusAreForgotten() {
+        final Set<String> first = sync(EXCLUDED, Long.MAX_VALUE);
+        final Jira.JiraIssue moved = stub.getIssues().stream()
+                .limit(ROOTS)
+                .filter(it -> first.contains(it.getId()))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+        final Jira.Status done = new Jira.Status();
+        done.setName("Done");
+        moved.getFields().setStatus(done);
+        stub.getStub().touch(moved.getId());
+        stub.getStub().getServed().reset();
+
+        final Set<String> second = sync(EXCLUDED, Long.MAX_VALUE);
+        assertFalse(second.contains(moved.getId()));
+        assertEquals(expected(), second);
+        assertEquals(1, stub.getStub().getServed().sum()); // only the id of the moved issue is listed
+    }
+
+    @Test
+    public void reconciliationAppliesTheExclusion() {
+        sync(EXCLUDED, Long.MAX_VALUE);
+        assertEquals(expected(), sync(EXCLUDED, 0));
+    }
+
+    @Test
+    public void exclusionSetsAreSynchronizedIndependently() {
+        final Set<String> excluding = sync(EXCLUDED, Long.MAX_VALUE);
+        final Set<String> all = sync(new String[0], Long.MAX_VALUE);
+        assertEquals(ROOTS, all.size());
+        assertTrue(all.size() > excluding.size());
+        // the exclusion is normalized: same statuses, same synchronization
+        stub.getStub().getServed().reset();
+        assertEquals(excluding, sync(new String[]{"closed", " done"}, Long.MAX_VALUE));
+        assertEquals(0, stub.getStub().getServed().sum());
+    }
+
+    private Set<String> sync(final String[] excluded, final long reconcileInterval) {
+        return store.sync(jira, "project = CORE", excluded, false, reconcileInterval)
+                .map(Jira.JiraIssue::getId)
+                .collect(toSet());
+    }
+
+    private Set<String> expected() {
+        return stub.getIssues().stream()
+                .limit(ROOTS)
+                .filter(Jira.statusFilter(EXCLUDED))
+                .map(Jira.JiraIssue::getId)
+                .collect(toSet());
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.rmannibucau.jira.reporter.stub.StubJiraRule;
+
+public class JiraTest {
+
+    private static final int ROOTS = 95;
+
+    @Rule
+    public final StubJiraRule jira = new StubJiraRule(300, ROOTS);
+
+    @Test
+    public void paginate() {
+        final Jira client = client(10);
+        final List<String> ids = client.query("project = CORE", new String[0]).map(Jira.JiraIssue::getId).collect(toList());
+        assertEquals(ROOTS, ids.size());
+        assertEquals(ROOTS, ids.stream().distinct().count());
+        assertEquals(expectedIds(ROOTS), ids);
+        assertEquals(10, jira.getStub().getSearches().sum());
+    }
+
+    @Test
+    public void paginateAsync() {
+        final Jira client = client(10);
+        final List<String> ids = client.queryAsync("project = CORE", new String[0]).join().stream()
+                .map(Jira.JiraIssue::getId)
+                .collect(toList());
+        assertEquals(expectedIds(ROOTS), ids);
+        assertEquals(10, jira.getStub().getSearches().sum());
+    }
+
+    @Test
+    public void serverPageSizeWins() {
+        jira.getStub().setMaxPageSize(20);
+        final Jira client = client(100);
+        assertEquals(ROOTS, client.query("project = CORE", new String[0]).count());
+        assertEquals(5, jira.getStub().getSearches().sum());
+    }
+
+    @Test
+    public void excludeStatuses() {
+        final Jira client = client(50);
+        final Set<String> statuses = client.query("project = CORE", new String[]{"Done", "closed"})
+                .map(it -> it.getFields().getStatus().getName())
+                .collect(toSet());
+        assertTrue(statuses.toString(), !statuses.isEmpty() && !statuses.contains("Done") && !statuses.contains("Closed"));
+        final long expected = jira.getIssues().stream().limit(ROOTS)
+                .filter(it -> !"Done".equals(it.getFields().getStatus().getName()))
+                .filter(it -> !"Closed".equals(it.getFields().getStatus().getName()))
+                .count();
+        assertEquals(expected, jira.getStub().getServed().sum());
+    }
+
+    @Test
+    public void unknownExcludedStatusesAreNotSentToJira() {
+        final Jira client = client(50);
+        final String[] excluded = {"Done", "Typo", "in progress"};
+        final List<Jira.JiraIssue> sync = client.query("project = CORE", excluded).collect(toList());
+        final List<Jira.JiraIssue> async = client.queryAsync("project = CORE", excluded).join();
+        final long expected = jira.getIssues().stream().limit(ROOTS)
+                .filter(it -> !"Done".equals(it.getFields().getStatus().getName()))
+                .filter(it -> !"In Progress".equals(it.getFields().getStatus().getName()))
+                .count();
+        assertEquals(expected, sync.size());
+        assertEquals(expected, async.size());
+        // the statuses are listed once per client, the known ones are still filtered server side
+        assertEquals(1, jira.getStub().getStatusLookups().sum());
+        assertEquals(2 * expected, jira.getStub().getServed().sum());
+    }
+
+    @Test
+    public void stubRejectsUnknownStatuses() {
+        try {
+            client(50).query("project = CORE AND status not in (\"Typo\")", new String[0]).count();
+            fail("Jira rejects unknown statuses");
+        } catch (final HttpException e) {
+            assertEquals(400, e.getStatus());
+        }
+    }
+
+    @Test
+    public void queryIds() {
+        final Jira client = client(50);
+        assertEquals(expectedIds(ROOTS), client.queryIds("project = CORE").collect(toList()));
+    }
+
+    @Test
+    public void planInFitsTheUrlBudget() {
+        final Jira client = client(50);
+        final List<String> ids = jira.getIssues().stream().map(Jira.JiraIssue::getId).collect(toList());
+        final List<String> queries = client.planIn("id", ids, new String[0], 1000);
+        assertTrue(queries.size() > 1);
+        final List<String> loaded = queries.stream()
+                .flatMap(query -> client.query(query, new String[0]))
+                .map(Jira.JiraIssue::getId)
+                .collect(toList());
+        assertEquals(ids, loaded);
+    }
+
+    @Test
+    public void iconWithoutContentType() {
+        final HttpTransport transport = new HttpTransport() {
+            @Override
+            public CompletableFuture<HttpResponse> get(final String uri, final Map<String, String> headers) {
+                return completedFuture(new HttpResponse(200, name -> null, new ByteArrayInputStream(new byte[]{1, 2})));
+            }
+
+            @Override
+            public void close() {
+                // no-op
+            }
+        };
+        try (final Jira client = new Jira("http://localhost", null, null, transport, 50, 1, Jira.DEFAULT_FIELDS, 512,
+                new RequestScheduler(1, 0, 10, new Stats()))) {
+            final Jira.Icon icon = client.getIcon("http://localhost/avatar", null);
+            assertEquals("application/octet-stream", icon.getContentType());
+            assertEquals("data:application/octet-stream;base64,AQI=", icon.toDataUri());
+        }
+    }
+
+    private Jira client(final int pageSize) {
+        return jira.client(pageSize, Jira.DEFAULT_FIELDS, 512, 1);
+    }
+
+    private List<String> expectedIds(final int count) {
+        return jira.getIssues().stream().limit(count).map(Jira.JiraIssue::getId).collect(toList());
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class JqlPlannerTest {
+
+    private static final String[] EXCLUDED = {"Done", "Won't \"Fix\""};
+
+    private static final String EXCLUSION = "status not in (\"Done\",\"Won't \\\"Fix\\\"\")";
+
+    private final JqlPlanner planner = new JqlPlanner(200);
+
+    @Test
+    public void excludeStatuses() {
+        assertEquals("project = CORE", planner.excludeStatuses("project = CORE", null));
+        assertEquals("project = CORE", planner.excludeStatuses("project = CORE", new String[]{" ", null}));
+        assertEquals("(project = CORE) AND " + EXCLUSION, planner.excludeStatuses(" project = CORE ", EXCLUDED));
+        assertEquals("(a = 1 OR b = 2) AND status not in (\"Done\")",
+                planner.excludeStatuses("a = 1 OR b = 2", new String[]{"Done", " Done ", ""}));
+        assertEquals(EXCLUSION, planner.excludeStatuses("", EXCLUDED));
+        assertEquals(EXCLUSION, planner.excludeStatuses(null, EXCLUDED));
+    }
+
+    @Test
+    public void orderByIsKeptLast() {
+        assertEquals("(project = CORE) AND " + EXCLUSION + " ORDER BY key ASC",
+                planner.excludeStatuses("project = CORE ORDER BY key ASC", EXCLUDED));
+        assertEquals("(project = CORE) AND " + EXCLUSION + " order\n by rank",
+                planner.excludeStatuses("project = CORE order\n by rank", EXCLUDED));
+        assertEquals(EXCLUSION + " ORDER BY created DESC", planner.excludeStatuses("ORDER BY created DESC", EXCLUDED));
+        // quoted "order by" are values, not the ordering clause
+        assertEquals("(summary ~ \"order by\" AND text ~ 'x order by y') AND " + EXCLUSION + " ORDER BY key",
+                planner.excludeStatuses("summary ~ \"order by\" AND text ~ 'x order by y' ORDER BY key", EXCLUDED));
+        // neither are fields starting with order
+        assertEquals("(orderby = 1) AND " + EXCLUSION, planner.excludeStatuses("orderby = 1", EXCLUDED));
+    }
+
+    @Test
+    public void planInFitsTheUrlBudget() {
+        final List<String> values = IntStream.range(0, 500).mapToObj(i -> "CORE-" + i).collect(toList());
+        final List<String> withDuplicates = new ArrayList<>(values);
+        withDuplicates.addAll(values.subList(0, 50));
+        for (final String[] excluded : Arrays.asList(new String[0], EXCLUDED)) {
+            final List<String> queries = planner.planIn("key", withDuplicates, excluded, 1000);
+            assertTrue(queries.size() > 1);
+            for (final String query : queries) {
+                assertTrue(query, encodedLength(planner.excludeStatuses(query, excluded)) <= 200);
+            }
+            // each value once and in order
+            assertEquals(values, queries.stream()
+                    .flatMap(query -> Stream.of(query.substring("key in (".length(), query.length() - 1).split(",")))
+                    .collect(toList()));
+        }
+        // the exclusion takes a part of the budget
+        assertTrue(planner.planIn("key", values, EXCLUDED, 1000).size() > planner.planIn("key", values, null, 1000).size());
+    }
+
+    @Test
+    public void planInMaxValues() {
+        final List<String> values = IntStream.range(0, 10).mapToObj(Integer::toString).collect(toList());
+        final List<String> queries = new JqlPlanner(4096).planIn("id", values, null, 3);
+        assertEquals(Arrays.asList("id in (0,1,2)", "id in (3,4,5)", "id in (6,7,8)", "id in (9)"), queries);
+        assertEquals(Collections.emptyList(), planner.planIn("id", Collections.emptyList(), null, 3));
+        // a value bigger than the budget still gets its query
+        final String big = String.join("", Collections.nCopies(300, "x"));
+        assertEquals(Arrays.asList("key in (a)", "key in (" + big + ")", "key in (b)"),
+                planner.planIn("key", Arrays.asList("a", big, "b"), null, 100));
+    }
+
+    private static int encodedLength(final String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8").length();
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
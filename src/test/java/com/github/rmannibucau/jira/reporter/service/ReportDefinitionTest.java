@@ -0,0 +1,62 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReportDefinitionTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void load() throws IOException {
+        final Path file = folder.newFile("reports.properties").toPath();
+        Files.write(file, (
+                "team-a.jql = labels = team-a\n" +
+                "team-a.title = Team A\n" +
+                "team-a.exclude-status = closed , Won't Fix,, done ,\n" +
+                "team-a.output = /tmp/team-a.html\n" +
+                "team-b.jql = labels = team-b\n" +
+                "team-c.jql = labels = team-c\n" +
+                "team-c.exclude-status =\n").getBytes(StandardCharsets.UTF_8));
+        final Map<String, ReportDefinition> reports = ReportDefinition.load(file, new String[]{"Closed"});
+        assertEquals(3, reports.size());
+
+        final ReportDefinition teamA = reports.get("team-a");
+        assertEquals("labels = team-a", teamA.getJql());
+        assertEquals("Team A", teamA.getTitle());
+        assertEquals("/tmp/team-a.html", teamA.getOutput());
+        assertArrayEquals(new String[]{"closed", "Won't Fix", "done"}, teamA.getExcludedStatuses());
+
+        final ReportDefinition teamB = reports.get("team-b");
+        assertEquals("team-b", teamB.getTitle());
+        assertArrayEquals(new String[]{"Closed"}, teamB.getExcludedStatuses());
+
+        assertArrayEquals(new String[0], reports.get("team-c").getExcludedStatuses());
+    }
+}
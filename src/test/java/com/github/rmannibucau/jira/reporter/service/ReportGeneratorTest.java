@@ -0,0 +1,139 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.rmannibucau.jira.reporter.stub.StubJiraRule;
+import com.github.rmannibucau.jira.reporter.stub.SyntheticIssues;
+
+public class ReportGeneratorTest {
+
+    private static final int ROOTS = 5;
+
+    @Rule
+    public final StubJiraRule stub = new StubJiraRule(1000, ROOTS, 1234, true);
+
+    private List<Jira.JiraIssue> issues;
+
+    private Jira jira;
+
+    private IconCache iconCache;
+
+    @Before
+    public void start() {
+        issues = stub.getIssues();
+        jira = stub.client();
+        iconCache = new IconCache(null);
+    }
+
+    @After
+    public void stop() {
+        iconCache.close();
+    }
+
+    @Test
+    public void generate() {
+        final ReportGenerator generator = generator(null);
+        final IssueGraph graph = generator.generate("project = CORE", new String[0]).getGraph();
+        final Set<String> expected = SyntheticIssues.reachable(issues, ROOTS);
+        assertEquals(expected.size(), graph.nodeCount());
+        // links are returned by both issues but rendered once
+        assertEquals(SyntheticIssues.links(issues, expected), graph.edgeCount());
+        assertEquals(expected.size(), stub.getStub().getServed().sum());
+    }
+
+    @Test
+    public void iconsAreEmbeddedOnce() {
+        final Cytoscape cytoscape = generator(null).generate("project = CORE", new String[0]);
+        // the stub serves the same image for all the project avatars
+        assertEquals(1, cytoscape.getIcons().size());
+        for (int i = 0; i < cytoscape.getGraph().nodeCount(); i++) {
+            assertNotNull(cytoscape.getGraph().icon(i));
+        }
+    }
+
+    @Test
+    public void syncOnlyFetchesUpdatedIssues() {
+        final ReportGenerator generator = generator(IssueStore.inMemory("stub", jira.getFields()));
+        final Map<String, Jira.JiraIssue> first = generator.fetch("project = CORE", new String[0]);
+
+        final Jira.JiraIssue updated = issues.get(1);
+        updated.getFields().setSummary("Updated summary");
+        stub.getStub().touch(updated.getId());
+        stub.getStub().getServed().reset();
+
+        final Map<String, Jira.JiraIssue> second = generator.fetch("project = CORE", new String[0]);
+        assertEquals(first.keySet(), second.keySet());
+        assertEquals("Updated summary", second.get(updated.getId()).getFields().getSummary());
+        assertNotEquals("Updated summary", first.get(updated.getId()).getFields().getSummary());
+        // only the updated root comes from the store synchronization, the dependencies are crawled again
+        assertEquals(first.size() - ROOTS + 1, stub.getStub().getServed().sum());
+    }
+
+    @Test
+    public void batchFetchMatchesSeparateFetches() {
+        final List<ReportDefinition> definitions = Arrays.asList(
+                definition("all", "project = CORE"),
+                definition("ids", "id in (" + issues.get(100).getId() + ", " + issues.get(200).getId() + ")", "Done"),
+                definition("keys", "key in (" + issues.get(300).getKey() + ", " + issues.get(301).getKey() + ")",
+                        "done", "Closed"),
+                definition("open", "project = CORE", "In Progress", "In Review"));
+        assertSameAsSeparateFetches(definitions, null); // nothing excluded by all the reports
+        assertSameAsSeparateFetches(definitions.subList(1, 3), null); // done excluded by both
+        assertSameAsSeparateFetches(definitions, IssueStore.inMemory("stub", jira.getFields()));
+        assertSameAsSeparateFetches(definitions.subList(1, 3), IssueStore.inMemory("stub", jira.getFields()));
+    }
+
+    private void assertSameAsSeparateFetches(final Collection<ReportDefinition> definitions, final IssueStore store) {
+        final Map<String, Map<String, Jira.JiraIssue>> batch = generator(store).fetch(definitions);
+        assertEquals(definitions.size(), batch.size());
+        final Set<Set<String>> distinct = new HashSet<>();
+        for (final ReportDefinition definition : definitions) {
+            final Set<String> expected = generator(null)
+                    .fetch(definition.getJql(), definition.getExcludedStatuses()).keySet();
+            assertEquals(definition.getName(), expected, batch.get(definition.getName()).keySet());
+            distinct.add(expected);
+        }
+        assertEquals(definitions.size(), distinct.size()); // the reports do not all select the same issues
+    }
+
+    private static ReportDefinition definition(final String name, final String jql, final String... excludedStatuses) {
+        final ReportDefinition definition = new ReportDefinition();
+        definition.setName(name);
+        definition.setJql(jql);
+        definition.setExcludedStatuses(excludedStatuses);
+        return definition;
+    }
+
+    private ReportGenerator generator(final IssueStore store) {
+        return new ReportGenerator(jira, new DependencyCrawler(jira, -1, -1, 50), store, iconCache, null, false, Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.rmannibucau.jira.reporter.stub.StubJiraRule;
+
+import lombok.Value;
+
+public class ReportServerTest {
+
+    @Rule
+    public final StubJiraRule stub = new StubJiraRule(200, 5);
+
+    private IconCache iconCache;
+
+    private ReportServer server;
+
+    private String base;
+
+    @Before
+    public void start() throws Exception {
+        final Jira jira = stub.client();
+        iconCache = new IconCache(null);
+
+        final Map<String, ReportDefinition> reports = new TreeMap<>();
+        reports.put("team a", definition("team a", "A & <b>B</b>"));
+        reports.put("team-b", definition("team-b", "B"));
+        server = new ReportServer(new ReportGenerator(jira, new DependencyCrawler(jira, -1, -1, 50),
+                IssueStore.inMemory("stub", jira.getFields()), iconCache, null, false, Long.MAX_VALUE), reports, false);
+        base = "http://localhost:" + server.start("localhost", 0, -1);
+    }
+
+    @After
+    public void stop() throws Exception {
+        server.close();
+        iconCache.close();
+    }
+
+    @Test
+    public void index() throws Exception {
+        awaitReport("/reports/team%20a");
+        awaitReport("/reports/team-b");
+        final Response index = request("GET", "/");
+        assertEquals(200, index.getStatus());
+        assertTrue(index.getBody(), index.getBody().contains("<a href=\"reports/team%20a\">A &amp; &lt;b&gt;B&lt;/b&gt;</a>"));
+        assertTrue(index.getBody(), index.getBody().contains("<a href=\"reports/team-b\">B</a>"));
+        assertFalse(index.getBody(), index.getBody().contains("<b>"));
+        assertFalse(index.getBody(), index.getBody().contains("(generating)"));
+    }
+
+    @Test
+    public void report() throws Exception {
+        final Response report = awaitReport("/reports/team%20a");
+        assertTrue(report.getBody(), report.getBody().contains("<title>A &amp; &lt;b&gt;B&lt;/b&gt;</title>"));
+        assertTrue(report.getBody(), report.getBody().contains("cytoscape"));
+        assertEquals(404, request("GET", "/reports/missing").getStatus());
+        assertEquals(404, request("GET", "/other").getStatus());
+    }
+
+    @Test
+    public void refresh() throws Exception {
+        final String generatedAt = awaitReport("/reports/team-b").getGeneratedAt();
+        awaitReport("/reports/team%20a");
+        final long searches = stub.getStub().getSearches().sum();
+
+        assertEquals(405, request("GET", "/reports/team-b/refresh").getStatus());
+        assertEquals(404, request("POST", "/reports/missing/refresh").getStatus());
+        Thread.sleep(5); // ensure the generation timestamp changes
+        assertEquals(202, request("POST", "/reports/team-b/refresh").getStatus());
+
+        final long end = System.currentTimeMillis() + 30000;
+        Response refreshed = request("GET", "/reports/team-b");
+        while (generatedAt.equals(refreshed.getGeneratedAt()) && System.currentTimeMillis() < end) {
+            Thread.sleep(50);
+            refreshed = request("GET", "/reports/team-b");
+        }
+        assertNotEquals(generatedAt, refreshed.getGeneratedAt());
+        assertTrue(stub.getStub().getSearches().sum() > searches);
+    }
+
+    @Test
+    public void metrics() throws Exception {
+        awaitReport("/reports/team-b");
+        final Response metrics = request("GET", "/metrics");
+        assertEquals(200, metrics.getStatus());
+        assertTrue(metrics.getBody(), metrics.getBody().contains("jira_reporter_http_requests_total{endpoint=\"search\"}"));
+        assertTrue(metrics.getBody(), metrics.getBody().contains("jira_reporter_phase_seconds{phase=\"dependencies\"}"));
+    }
+
+    private Response awaitReport(final String path) throws Exception {
+        final long end = System.currentTimeMillis() + 30000;
+        Response response = request("GET", path);
+        while (response.getStatus() == 503 && System.currentTimeMillis() < end) {
+            Thread.sleep(50);
+            response = request("GET", path);
+        }
+        assertEquals(200, response.getStatus());
+        return response;
+    }
+
+    private Response request(final String method, final String path) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(base + path).openConnection();
+        connection.setRequestMethod(method);
+        try {
+            final int status = connection.getResponseCode();
+            try (final InputStream stream = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                final ByteArrayOutputStream body = new ByteArrayOutputStream();
+                if (stream != null) {
+                    final byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = stream.read(buffer)) >= 0) {
+                        body.write(buffer, 0, read);
+                    }
+                }
+                return new Response(status, new String(body.toByteArray(), StandardCharsets.UTF_8),
+                        connection.getHeaderField("X-Report-Generated-At"));
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static ReportDefinition definition(final String name, final String title) {
+        final ReportDefinition definition = new ReportDefinition();
+        definition.setName(name);
+        definition.setTitle(title);
+        definition.setJql("project = CORE");
+        definition.setExcludedStatuses(new String[0]);
+        return definition;
+    }
+
+    @Value
+    private static class Response {
+
+        private int status;
+
+        private String body;
+
+        private String generatedAt;
+    }
+}
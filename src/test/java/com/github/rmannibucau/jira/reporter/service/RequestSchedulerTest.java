@@ -0,0 +1,167 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static java.util.Collections.emptyMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.rmannibucau.jira.reporter.stub.StubJiraRule;
+
+public class RequestSchedulerTest {
+
+    @Rule
+    public final StubJiraRule stub = new StubJiraRule(10, 1);
+
+    private HttpTransport transport;
+
+    private RequestScheduler scheduler;
+
+    @Before
+    public void init() {
+        transport = HttpTransport.create("jdk", 30000, 30000, 8);
+        scheduler = new RequestScheduler(8, 2, 10, new Stats());
+        stub.getStub().setRetryAfter(0);
+    }
+
+    @After
+    public void close() {
+        scheduler.close();
+        transport.close();
+    }
+
+    @Test
+    public void additiveIncrease() {
+        assertLimit(4);
+        int previous = scheduler.getLimit();
+        for (int i = 0; i < 24; i++) { // 4 + 1/4 + 1/4.25 + ... needs 24 requests to reach 8
+            status();
+            assertTrue(scheduler.getLimit() >= previous);
+            previous = scheduler.getLimit();
+        }
+        assertLimit(8);
+        status();
+        assertLimit(8); // capped by the max concurrency
+    }
+
+    @Test
+    public void multiplicativeDecrease() {
+        for (int i = 0; i < 24; i++) {
+            status();
+        }
+        assertLimit(8);
+        stub.getStub().throttle(2);
+        status(); // 8 -> 4 -> 2 then 2 + 1/2
+        assertEquals(2, stub.getStub().getThrottled().intValue());
+        assertLimit(2);
+        status(); // 2.5 + 1/2.5
+        assertLimit(2);
+        status();
+        assertLimit(3);
+    }
+
+    @Test
+    public void gatewayErrorsAreRetried() {
+        for (final int status : new int[]{429, 502, 503, 504}) {
+            stub.getStub().setThrottleStatus(status);
+            stub.getStub().throttle(1);
+            assertTrue(status().startsWith("["));
+        }
+        assertEquals(4, stub.getStub().getThrottled().intValue());
+        assertEquals(4, stub.getStub().getStatusLookups().intValue());
+    }
+
+    @Test
+    public void retryAfterIsHonored() {
+        stub.getStub().setRetryAfter(1);
+        stub.getStub().throttle(1);
+        final long start = System.nanoTime();
+        status();
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 900);
+    }
+
+    @Test
+    public void givesUpAfterMaxRetries() {
+        stub.getStub().setThrottleStatus(503);
+        stub.getStub().throttle(10);
+        try {
+            status();
+            fail("should have given up");
+        } catch (final HttpException he) {
+            assertEquals(503, he.getStatus());
+        }
+        assertEquals(3, stub.getStub().getThrottled().intValue()); // the request and its 2 retries
+        assertEquals(0, stub.getStub().getStatusLookups().intValue());
+    }
+
+    @Test
+    public void clientErrorsAreNotRetried() {
+        try {
+            scheduler.execute("missing", () -> transport.get(stub.getBase() + "/missing", emptyMap()),
+                    HttpResponse::readString);
+            fail("not found");
+        } catch (final HttpException he) {
+            assertEquals(404, he.getStatus());
+        }
+        assertLimit(4);
+    }
+
+    @Test
+    public void exhaustedRateLimitPausesUntilTheReset() {
+        stub.getStub().setRateLimitRemaining(0);
+        stub.getStub().setRetryAfter(1);
+        status(); // succeeds but halves the limit and pauses the next requests until the reset
+        assertLimit(2);
+        stub.getStub().setRateLimitRemaining(-1);
+        final long start = System.nanoTime();
+        status();
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 900);
+        assertEquals(0, stub.getStub().getThrottled().intValue());
+    }
+
+    @Test
+    public void nearLimitSlowsDownWithoutPausing() {
+        stub.getStub().setNearLimit(true);
+        status();
+        assertLimit(2);
+        status();
+        assertLimit(1);
+        status();
+        assertLimit(1);
+    }
+
+    // the slot is released once the caller got its result
+    private void assertLimit(final int expected) {
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scheduler.getLimit() != expected && System.nanoTime() < end) {
+            Thread.yield();
+        }
+        assertEquals(expected, scheduler.getLimit());
+    }
+
+    private String status() {
+        return scheduler.execute("status", () -> transport.get(stub.getBase() + "/rest/api/2/status", emptyMap()),
+                HttpResponse::readString);
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SearchJournalTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void pagesAreKeyedByInstance() throws Exception {
+        final Path file = SearchJournal.file(folder.getRoot().toPath(), "run");
+        final byte[] page = "{\"issues\":[]}".getBytes(StandardCharsets.UTF_8);
+        try (final SearchJournal journal = SearchJournal.open(file, false)) {
+            journal.append("http://a", "project = CORE", "summary", 0, page);
+        }
+        try (final SearchJournal journal = SearchJournal.open(file, true)) {
+            assertArrayEquals(page, journal.get("http://a", "project = CORE", "summary", 0));
+            assertNull(journal.get("http://b", "project = CORE", "summary", 0));
+            assertNull(journal.get("http://a", "project = CORE", "summary", 50));
+        }
+        try (final SearchJournal journal = SearchJournal.open(file, false)) {
+            assertNull(journal.get("http://a", "project = CORE", "summary", 0));
+        }
+    }
+}
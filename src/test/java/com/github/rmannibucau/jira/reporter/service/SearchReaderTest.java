@@ -0,0 +1,123 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SearchReaderTest {
+
+    @Test
+    public void page() {
+        final Jira.JiraIssues page = read(Jira.DEFAULT_FIELDS + ",fixVersions", "{" +
+                "'expand':'names','startAt':50,'maxResults':2,'total':52,'issues':[" +
+                "{'id':'1','key':'CORE-1','self':'http://jira/1','fields':{" +
+                "  'summary':'first','status':{'name':'Open','iconUrl':'http://jira/open.png'}," +
+                "  'priority':{'name':'Major'},'customfield_10000':[{'a':[1,2]},null]," +
+                "  'project':{'key':'CORE','avatarUrls':{'48x48':'http://jira/48','32x32':'http://jira/32'}}," +
+                "  'fixVersions':[{'id':'10','name':'1.0','released':true,'archived':false,'projectId':3}]," +
+                "  'issuelinks':[" +
+                "    {'id':'100','type':{'name':'Blocks','inward':'is blocked by','outward':'blocks'}," +
+                "     'outwardIssue':{'id':'2','key':'CORE-2','fields':{'summary':'second','status':{'name':'Open'}," +
+                "       'project':{'key':'CORE'},'issuelinks':[{'id':'999'}]}}}," +
+                "    {'id':'101','type':{'name':'Relates'},'inwardIssue':{'id':'2','key':'CORE-2'," +
+                "     'fields':{'summary':'second','status':{'name':'Open'}}}}]}}," +
+                "{'id':'2','key':'CORE-2','fields':{'summary':null,'status':null,'project':null," +
+                "  'fixVersions':null,'issuelinks':null}}," +
+                "{'id':'3','key':'CORE-3','fields':null}," +
+                "{'id':'4','key':'CORE-4','fields':{'project':{'key':'UI','avatarUrls':{'16x16':'http://jira/16'}}," +
+                "  'status':{'name':'Open'}}}]}");
+        assertEquals(50, page.getStartAt());
+        assertEquals(2, page.getMaxResults());
+        assertEquals(52, page.getTotal());
+        final List<Jira.JiraIssue> issues = new ArrayList<>(page.getIssues());
+        assertEquals(4, issues.size());
+
+        final Jira.JiraIssue first = issues.get(0);
+        assertEquals("1", first.getId());
+        assertEquals("CORE-1", first.getKey());
+        assertNull(first.getSelf());
+        assertEquals("first", first.getFields().getSummary());
+        assertEquals("Open", first.getFields().getStatus().getName());
+        assertEquals("CORE", first.getFields().getProject().getKey());
+        assertEquals(Collections.singletonMap("32x32", "http://jira/32"), first.getFields().getProject().getAvatarUrls());
+        final Jira.JiraVersion version = first.getFields().getFixVersions().iterator().next();
+        assertEquals("1.0", version.getName());
+        assertTrue(version.isReleased());
+        assertEquals(3, version.getProjectId());
+
+        final List<Jira.IssueLinks> links = new ArrayList<>(first.getFields().getIssuelinks());
+        assertEquals(2, links.size());
+        assertEquals("100", links.get(0).getId());
+        assertEquals("blocks", links.get(0).getType().getOutward());
+        final Jira.JiraIssue outward = links.get(0).getOutwardIssue();
+        assertEquals("CORE-2", outward.getKey());
+        assertEquals("second", outward.getFields().getSummary());
+        assertNull(outward.getFields().getProject()); // embedded issues do not keep their project
+        assertNull(outward.getFields().getIssuelinks()); // nor their links
+        assertNull(links.get(0).getInwardIssue());
+        assertEquals("Relates", links.get(1).getType().getName());
+        // the embedded issues and the statuses are shared
+        assertSame(outward, links.get(1).getInwardIssue());
+        assertSame(first.getFields().getStatus(), outward.getFields().getStatus());
+
+        final Jira.Fields nulls = issues.get(1).getFields();
+        assertNull(nulls.getSummary());
+        assertNull(nulls.getStatus());
+        assertNull(nulls.getProject());
+        assertTrue(nulls.getFixVersions().isEmpty());
+        assertTrue(nulls.getIssuelinks().isEmpty());
+
+        assertEquals("CORE-3", issues.get(2).getKey());
+        assertNull(issues.get(2).getFields());
+
+        // without a 32x32 avatar the first one is kept
+        assertEquals(Collections.singletonMap("16x16", "http://jira/16"),
+                issues.get(3).getFields().getProject().getAvatarUrls());
+    }
+
+    @Test
+    public void onlyRequestedFields() {
+        final Jira.JiraIssue issue = read("status", "{'issues':[{'id':'1','fields':{'summary':'ignored'," +
+                "'status':{'name':'Done'},'issuelinks':[{'id':'1'}]}}]}").getIssues().iterator().next();
+        assertNull(issue.getFields().getSummary());
+        assertNull(issue.getFields().getIssuelinks());
+        assertEquals("Done", issue.getFields().getStatus().getName());
+    }
+
+    @Test
+    public void nullIssues() {
+        final Jira.JiraIssues page = read(Jira.DEFAULT_FIELDS, "{'startAt':0,'maxResults':50,'total':0,'issues':null}");
+        assertEquals(0, page.getTotal());
+        assertTrue(page.getIssues().isEmpty());
+        assertTrue(read(Jira.DEFAULT_FIELDS, "{'total':0,'issues':[]}").getIssues().isEmpty());
+    }
+
+    private static Jira.JiraIssues read(final String fields, final String json) {
+        return new SearchReader(fields).read(new ByteArrayInputStream(
+                json.replace('\'', '"').getBytes(StandardCharsets.UTF_8)));
+    }
+}
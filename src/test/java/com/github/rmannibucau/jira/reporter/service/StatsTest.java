@@ -0,0 +1,52 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StatsTest {
+
+    @Test
+    public void scopedPhases() throws InterruptedException {
+        final Stats stats = new Stats();
+        final Stats remote = stats.scope("remote");
+        stats.time("query", () -> sleep(20));
+        remote.time("query", () -> sleep(10));
+        remote.scope("nested").time("query", () -> sleep(1));
+        remote.count("issues", 3);
+        stats.count("issues", 2);
+        remote.request("search", 1_000_000, 200);
+        stats.request("search", 1_000_000, 200);
+
+        final String metrics = stats.toPrometheus();
+        assertTrue(metrics, metrics.contains("jira_reporter_phase_seconds{phase=\"query\"} "));
+        assertTrue(metrics, metrics.contains("jira_reporter_phase_seconds{phase=\"remote:query\"} "));
+        assertTrue(metrics, metrics.contains("jira_reporter_phase_seconds{phase=\"remote:nested:query\"} "));
+        assertTrue(metrics, metrics.contains("jira_reporter_count{name=\"issues\"} 5\n"));
+        assertTrue(metrics, metrics.contains("jira_reporter_http_requests_total{endpoint=\"search\"} 2\n"));
+        assertFalse(metrics, metrics.contains("remote:issues") || metrics.contains("remote:search"));
+        // the scope is a view
+        assertEquals(metrics, remote.toPrometheus());
+    }
+
+    private static void sleep(final long ms) throws InterruptedException {
+        Thread.sleep(ms);
+    }
+}
@@ -0,0 +1,470 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.stub;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntPredicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+
+import com.github.rmannibucau.jira.reporter.service.Jira;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * An embedded Jira serving synthetic issues for the tests and the benchmarks.
+ * It implements {@code /rest/api/2/search} with the JQL subset the reporter uses ({@code id in}, {@code key in},
+ * {@code status not in}, {@code updated >=} joined with {@code AND}, any other clause matching the "root" issues),
+ * pagination, the statuses (a query excluding an unknown status fails like with Jira) and the project avatars.
+ * Latency, throttling (a ratio or the next requests, with a 429 or any other status), the rate limit headers
+ * and the maximum page size are configurable at runtime.
+ *
+ * Standalone usage: {@code StubJira <issues> <fanOut> <port>} then point {@code --base-url} to it.
+ */
+@Slf4j
+public class StubJira implements AutoCloseable {
+
+    private static final Pattern IN = Pattern.compile("(?i)^(id|key)\\s+in\\s*\\((.*)\\)$");
+
+    private static final Pattern STATUS_NOT_IN = Pattern.compile("(?i)^status\\s+not\\s+in\\s*\\((.*)\\)$");
+
+    private static final Pattern UPDATED = Pattern.compile("(?i)^updated\\s*>=\\s*\"?([^\"]+)\"?$");
+
+    private static final Pattern RELATIVE = Pattern.compile("^-(\\d+)([mhdw])$");
+
+    private static final Pattern ORDER_BY = Pattern.compile("(?i)\\s+order\\s+by\\s+.*$");
+
+    // 1x1 transparent png
+    private static final byte[] AVATAR = Base64.getDecoder().decode(
+            "iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAQAAAC1HAwCAAAAC0lEQVR42mNkYAAAAAYAAjCB0C8AAAAASUVORK5CYII=");
+
+    private final List<Jira.JiraIssue> issues;
+
+    private final Map<String, Integer> indexById = new HashMap<>();
+
+    private final Map<String, Integer> indexByKey = new HashMap<>();
+
+    // lower cased name to name
+    private final Map<String, String> statuses = new TreeMap<>();
+
+    private final long[] updated;
+
+    private final int roots;
+
+    private final Jsonb jsonb = JsonbBuilder.create();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @Getter
+    private final LongAdder searches = new LongAdder();
+
+    @Getter
+    private final LongAdder throttled = new LongAdder();
+
+    @Getter
+    private final LongAdder statusLookups = new LongAdder();
+
+    @Getter
+    private final LongAdder avatars = new LongAdder();
+
+    // avatar revalidations answered with a 304
+    @Getter
+    private final LongAdder notModified = new LongAdder();
+
+    // issues returned by the searches, a crawl fetching each issue once serves as many issues as it loads
+    @Getter
+    private final LongAdder served = new LongAdder();
+
+    @Setter
+    private volatile long latency;
+
+    @Setter
+    private volatile double throttleRatio;
+
+    // the status of the throttled responses
+    @Setter
+    private volatile int throttleStatus = 429;
+
+    // seconds, a negative value omits the Retry-After header
+    @Setter
+    private volatile int retryAfter = 1;
+
+    // when positive or zero the successful responses send X-RateLimit-Remaining and a reset in retryAfter seconds
+    @Setter
+    private volatile int rateLimitRemaining = -1;
+
+    // the successful responses send X-RateLimit-NearLimit
+    @Setter
+    private volatile boolean nearLimit;
+
+    private final AtomicInteger throttleNext = new AtomicInteger();
+
+    @Setter
+    private volatile int maxPageSize = 100;
+
+    private HttpServer server;
+
+    /**
+     * @param issues the issues to serve, see {@link SyntheticIssues}.
+     * @param roots how many issues (the first ones) match a query which is not an id/key lookup.
+     */
+    public StubJira(final List<Jira.JiraIssue> issues, final int roots) {
+        this.issues = issues;
+        this.roots = roots;
+        this.updated = new long[issues.size()];
+        final long now = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+        for (int i = 0; i < issues.size(); i++) {
+            indexById.put(issues.get(i).getId(), i);
+            indexByKey.put(issues.get(i).getKey(), i);
+            final String status = issues.get(i).getFields().getStatus().getName();
+            statuses.put(status.toLowerCase(Locale.ROOT), status);
+            updated[i] = now;
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        final int fanOut = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        final int port = args.length > 2 ? Integer.parseInt(args[2]) : 8090;
+        final String base = "http://localhost:" + port;
+        try (final StubJira stub = new StubJira(SyntheticIssues.generate(count, fanOut, .1, base, 1234), Math.max(1, count / 100))) {
+            stub.start(port);
+            Thread.currentThread().join();
+        }
+    }
+
+    public static int freePort() throws IOException {
+        try (final ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * @param port the port to bind, 0 for a random one.
+     * @return the base url to use for the client.
+     */
+    public String start(final int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.setExecutor(executor);
+        server.createContext("/rest/api/2/search", this::search);
+        server.createContext("/rest/api/2/status", this::status);
+        server.createContext("/secure/projectavatar", this::avatar);
+        server.start();
+        final String base = "http://localhost:" + server.getAddress().getPort();
+        log.info("Stub Jira serving {} issues on {}", issues.size(), base);
+        return base;
+    }
+
+    /**
+     * Marks issues as updated now.
+     *
+     * @param ids the issue ids.
+     */
+    public void touch(final String... ids) {
+        final long now = System.currentTimeMillis();
+        Stream.of(ids).map(indexById::get).filter(it -> it != null).forEach(i -> updated[i] = now);
+    }
+
+    /**
+     * Throttles the next requests whatever the throttle ratio is.
+     *
+     * @param count how many requests to throttle.
+     */
+    public void throttle(final int count) {
+        throttleNext.set(count);
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        executor.shutdownNow();
+        jsonb.close();
+    }
+
+    private void search(final HttpExchange exchange) throws IOException {
+        try {
+            if (delayOrThrottle(exchange)) {
+                return;
+            }
+            searches.increment();
+            final Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            final IntPredicate matcher = parse(ORDER_BY.matcher(query.getOrDefault("jql", "")).replaceAll("").trim());
+            final List<Integer> matching = new ArrayList<>();
+            for (int i = 0; i < issues.size(); i++) {
+                if (matcher.test(i)) {
+                    matching.add(i);
+                }
+            }
+
+            final int startAt = Integer.parseInt(query.getOrDefault("startAt", "0"));
+            final int maxResults = Math.min(maxPageSize, Integer.parseInt(query.getOrDefault("maxResults", "50")));
+            final boolean idsOnly = "id".equals(query.get("fields"));
+            final Jira.JiraIssues page = new Jira.JiraIssues();
+            page.setStartAt(startAt);
+            page.setMaxResults(maxResults);
+            page.setTotal(matching.size());
+            page.setIssues(matching.stream().skip(startAt).limit(maxResults)
+                    .map(issues::get)
+                    .map(it -> idsOnly ? idOnly(it) : it)
+                    .collect(toList()));
+            served.add(page.getIssues().size());
+            send(exchange, 200, "application/json", jsonb.toJson(page).getBytes(StandardCharsets.UTF_8));
+        } catch (final RuntimeException re) {
+            log.error(re.getMessage(), re);
+            send(exchange, 400, "application/json",
+                    ("{\"errorMessages\":[\"" + re.getMessage().replace("\"", "'") + "\"]}").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void status(final HttpExchange exchange) throws IOException {
+        if (delayOrThrottle(exchange)) {
+            return;
+        }
+        statusLookups.increment();
+        send(exchange, 200, "application/json", jsonb.toJson(statuses.values().stream().map(name -> {
+            final Jira.Status status = new Jira.Status();
+            status.setName(name);
+            return status;
+        }).collect(toList())).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void avatar(final HttpExchange exchange) throws IOException {
+        if (delayOrThrottle(exchange)) {
+            return;
+        }
+        avatars.increment();
+        exchange.getResponseHeaders().set("ETag", "\"stub\"");
+        if ("\"stub\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModified.increment();
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        send(exchange, 200, "image/png", AVATAR);
+    }
+
+    private boolean delayOrThrottle(final HttpExchange exchange) throws IOException {
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (throttleNext.getAndUpdate(it -> Math.max(0, it - 1)) > 0
+                || (throttleRatio > 0 && ThreadLocalRandom.current().nextDouble() < throttleRatio)) {
+            throttled.increment();
+            if (retryAfter >= 0) {
+                exchange.getResponseHeaders().set("Retry-After", Integer.toString(retryAfter));
+            }
+            send(exchange, throttleStatus, "text/plain", "Too many requests".getBytes(StandardCharsets.UTF_8));
+            return true;
+        }
+        if (rateLimitRemaining >= 0) {
+            exchange.getResponseHeaders().set("X-RateLimit-Remaining", Integer.toString(rateLimitRemaining));
+            exchange.getResponseHeaders().set("X-RateLimit-Reset",
+                    Instant.now().plusSeconds(Math.max(0, retryAfter)).toString());
+        }
+        if (nearLimit) {
+            exchange.getResponseHeaders().set("X-RateLimit-NearLimit", "true");
+        }
+        return false;
+    }
+
+    // clauses joined by AND, parenthesis are supported
+    private IntPredicate parse(final String jql) {
+        IntPredicate predicate = i -> true;
+        for (final String clause : splitAnd(jql)) {
+            predicate = predicate.and(parseClause(clause.trim()));
+        }
+        return predicate;
+    }
+
+    private IntPredicate parseClause(final String clause) {
+        if (clause.startsWith("(") && clause.endsWith(")")) {
+            return parse(clause.substring(1, clause.length() - 1));
+        }
+        final Matcher in = IN.matcher(clause);
+        if (in.matches()) {
+            final Map<String, Integer> index = "id".equalsIgnoreCase(in.group(1)) ? indexById : indexByKey;
+            final Set<Integer> values = Stream.of(in.group(2).split(","))
+                    .map(it -> unquote(it.trim()))
+                    .map(index::get)
+                    .filter(it -> it != null)
+                    .collect(toSet());
+            return values::contains;
+        }
+        final Matcher statusNotIn = STATUS_NOT_IN.matcher(clause);
+        if (statusNotIn.matches()) {
+            final Set<String> excluded = Stream.of(statusNotIn.group(1).split(","))
+                    .map(it -> unquote(it.trim()).toLowerCase(Locale.ROOT))
+                    .collect(toSet());
+            // like Jira, an unknown status is an error
+            excluded.stream().filter(it -> !statuses.containsKey(it)).findFirst().ifPresent(it -> {
+                throw new IllegalArgumentException("The value '" + it + "' does not exist for the field 'status'.");
+            });
+            return i -> !excluded.contains(issues.get(i).getFields().getStatus().getName().toLowerCase(Locale.ROOT));
+        }
+        final Matcher updatedAfter = UPDATED.matcher(clause);
+        if (updatedAfter.matches()) {
+            final long threshold = parseDate(updatedAfter.group(1).trim());
+            return i -> updated[i] >= threshold;
+        }
+        return i -> i < roots;
+    }
+
+    private static long parseDate(final String value) {
+        final Matcher relative = RELATIVE.matcher(value);
+        if (relative.matches()) {
+            final long amount = Long.parseLong(relative.group(1));
+            final TimeUnit unit;
+            switch (relative.group(2)) {
+                case "m":
+                    unit = TimeUnit.MINUTES;
+                    break;
+                case "h":
+                    unit = TimeUnit.HOURS;
+                    break;
+                case "w":
+                    return System.currentTimeMillis() - TimeUnit.DAYS.toMillis(7 * amount);
+                default:
+                    unit = TimeUnit.DAYS;
+            }
+            return System.currentTimeMillis() - unit.toMillis(amount);
+        }
+        return LocalDateTime.parse(value, DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm"))
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static List<String> splitAnd(final String jql) {
+        final List<String> clauses = new ArrayList<>();
+        final String lower = jql.toLowerCase(Locale.ROOT);
+        int depth = 0;
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i < jql.length(); i++) {
+            final char c = jql.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                quoted = !quoted;
+            } else if (!quoted && c == '(') {
+                depth++;
+            } else if (!quoted && c == ')') {
+                depth--;
+            } else if (!quoted && depth == 0 && lower.startsWith(" and ", i)) {
+                clauses.add(jql.substring(start, i));
+                start = i + " and ".length();
+                i = start - 1;
+            }
+        }
+        clauses.add(jql.substring(start));
+        return clauses.stream().filter(it -> !it.trim().isEmpty()).collect(toList());
+    }
+
+    private static String unquote(final String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1).replace("\\\"", "\"").replace("\\\\", "\\");
+        }
+        return value;
+    }
+
+    private static Jira.JiraIssue idOnly(final Jira.JiraIssue issue) {
+        final Jira.JiraIssue copy = new Jira.JiraIssue();
+        copy.setId(issue.getId());
+        copy.setKey(issue.getKey());
+        return copy;
+    }
+
+    private static Map<String, String> parseQuery(final String query) {
+        final Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (final String param : query.split("&")) {
+            final int eq = param.indexOf('=');
+            if (eq > 0) {
+                params.put(decode(param.substring(0, eq)), decode(param.substring(eq + 1)));
+            }
+        }
+        return params;
+    }
+
+    private static String decode(final String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void send(final HttpExchange exchange, final int status, final String contentType,
+                             final byte[] payload) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        final String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (payload.length > 1024 && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(status, 0);
+            try (final OutputStream stream = new GZIPOutputStream(exchange.getResponseBody())) {
+                stream.write(payload);
+            }
+            return;
+        }
+        exchange.sendResponseHeaders(status, payload.length);
+        try (final OutputStream stream = exchange.getResponseBody()) {
+            stream.write(payload);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.stub;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.rules.ExternalResource;
+
+import com.github.rmannibucau.jira.reporter.service.HttpTransport;
+import com.github.rmannibucau.jira.reporter.service.Jira;
+import com.github.rmannibucau.jira.reporter.service.RequestScheduler;
+import com.github.rmannibucau.jira.reporter.service.Stats;
+
+import lombok.Getter;
+
+/**
+ * Starts a {@link StubJira} serving {@link SyntheticIssues} around each test and closes it with the clients
+ * created through {@link #client()}.
+ */
+public class StubJiraRule extends ExternalResource {
+
+    private static final int CONCURRENCY = 4;
+
+    private final int count;
+
+    private final int roots;
+
+    private final long seed;
+
+    private final boolean avatars;
+
+    private final List<Jira> clients = new ArrayList<>();
+
+    @Getter
+    private List<Jira.JiraIssue> issues;
+
+    @Getter
+    private StubJira stub;
+
+    @Getter
+    private String base;
+
+    /**
+     * @param count the number of issues, each one links 2 others and 10% of the links create cycles.
+     * @param roots how many issues match a query which is not an id/key lookup.
+     */
+    public StubJiraRule(final int count, final int roots) {
+        this(count, roots, 1234, false);
+    }
+
+    /**
+     * @param seed the seed of the issues.
+     * @param avatars should the issues reference the avatars of this stub.
+     */
+    public StubJiraRule(final int count, final int roots, final long seed, final boolean avatars) {
+        this.count = count;
+        this.roots = roots;
+        this.seed = seed;
+        this.avatars = avatars;
+    }
+
+    @Override
+    protected void before() throws Throwable {
+        final int port = StubJira.freePort();
+        issues = SyntheticIssues.generate(count, 2, .1, avatars ? "http://localhost:" + port : null, seed);
+        stub = new StubJira(issues, roots);
+        base = stub.start(port);
+    }
+
+    @Override
+    protected void after() {
+        clients.forEach(Jira::close);
+        clients.clear();
+        try {
+            stub.close();
+        } catch (final Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Jira client() {
+        return client(100);
+    }
+
+    public Jira client(final int pageSize) {
+        return client(pageSize, Jira.DEFAULT_FIELDS, Jira.DEFAULT_URL_BUDGET, 1);
+    }
+
+    /**
+     * @return a client of this stub (jdk transport), closed after the test.
+     */
+    public Jira client(final int pageSize, final String fields, final int urlBudget, final int maxRetries) {
+        final Jira jira = new Jira(base, null, null, HttpTransport.create("jdk", 30000, 30000, CONCURRENCY), pageSize,
+                CONCURRENCY, fields, urlBudget, new RequestScheduler(CONCURRENCY, maxRetries, 10, new Stats()));
+        clients.add(jira);
+        return jira;
+    }
+}
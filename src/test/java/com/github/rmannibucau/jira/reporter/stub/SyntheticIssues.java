@@ -0,0 +1,196 @@
+/**
+ *
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rmannibucau.jira.reporter.stub;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+
+import com.github.rmannibucau.jira.reporter.service.Jira;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * Generates issues shaped like the /search responses: a few projects and statuses, links stored on both sides
+ * and embedding the linked issue (id, key, summary, status) like Jira does.
+ * Links mainly point to the next issues (so a crawl from the first ones goes deep) and a ratio points
+ * backward, creating cycles.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class SyntheticIssues {
+
+    public static final String[] STATUSES = {"Open", "In Progress", "In Review", "Done", "Closed"};
+
+    public static final String[] PROJECTS = {"CORE", "UI", "API", "DOC", "OPS"};
+
+    /**
+     * @param count the number of issues.
+     * @param fanOut the number of outward links per issue.
+     * @param cycleRatio the probability of a link to point to a previous issue.
+     * @param avatarBaseUrl the base of the project avatar urls, null to not set any avatar.
+     * @param seed the random seed, same inputs give the same issues.
+     * @return the issues, the issue at index i has the id {@code 100000 + i}.
+     */
+    public static List<Jira.JiraIssue> generate(final int count, final int fanOut, final double cycleRatio,
+                                                final String avatarBaseUrl, final long seed) {
+        final Random random = new Random(seed);
+        final int[] statuses = new int[count];
+        for (int i = 0; i < count; i++) {
+            statuses[i] = random.nextInt(STATUSES.length);
+        }
+
+        final List<Jira.JiraIssue> issues = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final Jira.JiraIssue issue = reference(i, statuses);
+            final Jira.Project project = new Jira.Project();
+            project.setKey(PROJECTS[i % PROJECTS.length]);
+            project.setAvatarUrls(avatarBaseUrl != null ?
+                    singletonMap("32x32", avatarBaseUrl + "/secure/projectavatar?pid=" + project.getKey()) : emptyMap());
+            issue.getFields().setProject(project);
+            issue.getFields().setIssuelinks(new ArrayList<>());
+            issues.add(issue);
+        }
+
+        // forward links stay "local" but the window grows with the count to keep the graph depth reasonable
+        final int window = Math.max(16, Math.max(fanOut * 4, count / 64));
+        final Jira.IssueType type = new Jira.IssueType();
+        type.setName("Blocks");
+        type.setInward("is blocked by");
+        type.setOutward("blocks");
+        for (int i = 0; i < count; i++) {
+            for (int l = 0; l < fanOut; l++) {
+                final int target;
+                if (i > 0 && (i == count - 1 || random.nextDouble() < cycleRatio)) {
+                    target = random.nextInt(i);
+                } else if (i < count - 1) {
+                    target = i + 1 + random.nextInt(Math.min(window, count - i - 1));
+                } else {
+                    continue;
+                }
+
+                final Jira.IssueLinks outward = new Jira.IssueLinks();
+                outward.setId(i + "-" + target);
+                outward.setType(type);
+                outward.setOutwardIssue(reference(target, statuses));
+                issues.get(i).getFields().getIssuelinks().add(outward);
+
+                final Jira.IssueLinks inward = new Jira.IssueLinks();
+                inward.setId(i + "-" + target);
+                inward.setType(type);
+                inward.setInwardIssue(reference(i, statuses));
+                issues.get(target).getFields().getIssuelinks().add(inward);
+            }
+        }
+        return issues;
+    }
+
+    /**
+     * Reference crawl the tests compare the reporter to.
+     *
+     * @param issues the generated issues.
+     * @param roots how many issues (the first ones) are the roots, see {@link StubJira}.
+     * @param excludedStatuses the statuses to ignore.
+     * @return the ids of the roots and of their transitive dependencies.
+     */
+    public static Set<String> reachable(final List<Jira.JiraIssue> issues, final int roots,
+                                        final String... excludedStatuses) {
+        final Map<String, Jira.JiraIssue> byId = new HashMap<>();
+        issues.forEach(issue -> byId.put(issue.getId(), issue));
+        final Set<String> visited = new HashSet<>();
+        final Deque<Jira.JiraIssue> queue = new ArrayDeque<>();
+        issues.stream().limit(roots).filter(it -> !excluded(it, excludedStatuses)).forEach(it -> {
+            visited.add(it.getId());
+            queue.add(it);
+        });
+        while (!queue.isEmpty()) {
+            queue.poll().getFields().getIssuelinks().stream()
+                    .flatMap(link -> Stream.of(link.getInwardIssue(), link.getOutwardIssue()))
+                    .filter(it -> it != null && !visited.contains(it.getId()))
+                    .map(it -> byId.get(it.getId()))
+                    .filter(it -> !excluded(it, excludedStatuses))
+                    .forEach(it -> {
+                        visited.add(it.getId());
+                        queue.add(it);
+                    });
+        }
+        return visited;
+    }
+
+    /**
+     * @param issues the generated issues.
+     * @param ids the issues to consider.
+     * @return the number of distinct links between these issues (a link is stored on both sides).
+     */
+    public static long links(final List<Jira.JiraIssue> issues, final Set<String> ids) {
+        return issues.stream()
+                .filter(it -> ids.contains(it.getId()))
+                .flatMap(it -> it.getFields().getIssuelinks().stream())
+                .filter(link -> ids.contains((link.getInwardIssue() != null ? link.getInwardIssue() : link.getOutwardIssue()).getId()))
+                .map(Jira.IssueLinks::getId)
+                .distinct()
+                .count();
+    }
+
+    public static byte[] toJson(final List<Jira.JiraIssue> issues) {
+        final Jira.JiraIssues page = new Jira.JiraIssues();
+        page.setStartAt(0);
+        page.setMaxResults(issues.size());
+        page.setTotal(issues.size());
+        page.setIssues(issues);
+        try (final Jsonb jsonb = JsonbBuilder.create()) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            jsonb.toJson(page, out);
+            return out.toByteArray();
+        } catch (final Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean excluded(final Jira.JiraIssue issue, final String[] excludedStatuses) {
+        return Stream.of(excludedStatuses).anyMatch(it -> it.equalsIgnoreCase(issue.getFields().getStatus().getName()));
+    }
+
+    private static Jira.JiraIssue reference(final int index, final int[] statuses) {
+        final Jira.Status status = new Jira.Status();
+        status.setName(STATUSES[statuses[index]]);
+
+        final Jira.Fields fields = new Jira.Fields();
+        fields.setSummary("Synthetic issue number " + index + " with a summary of a realistic size");
+        fields.setStatus(status);
+
+        final Jira.JiraIssue issue = new Jira.JiraIssue();
+        issue.setId(Integer.toString(100000 + index));
+        issue.setKey(PROJECTS[index % PROJECTS.length] + '-' + index);
+        issue.setSelf("http://localhost/rest/api/2/issue/" + issue.getId());
+        issue.setFields(fields);
+        return issue;
+    }
+}